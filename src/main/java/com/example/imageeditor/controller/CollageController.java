@@ -4,24 +4,41 @@ import com.example.imageeditor.domain.Image;
 import com.example.imageeditor.domain.ImageLayer;
 import com.example.imageeditor.domain.User;
 import com.example.imageeditor.repository.ImageRepository;
+import com.example.imageeditor.service.CollagePreviewService;
 import com.example.imageeditor.service.CollageService;
 import com.example.imageeditor.service.ImageService;
+import com.example.imageeditor.service.LayerIndexService;
+import com.example.imageeditor.service.RenderAdmissionController;
+import com.example.imageeditor.service.RenderJobService;
+import com.example.imageeditor.service.RenderRejectedException;
+import com.example.imageeditor.service.TransformedLayerCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 @RequestMapping("/collages")
@@ -34,6 +51,14 @@ public class CollageController {
 
     private final ImageService imageService;
 
+    private final RenderJobService renderJobService;
+
+    private final CollagePreviewService collagePreviewService;
+
+    private final LayerIndexService layerIndexService;
+
+    private final RenderAdmissionController renderAdmissionController;
+
     @GetMapping("/from-image/{imageId}")
     public String editCollageFromImage(@PathVariable Long imageId, @AuthenticationPrincipal User user) {
         Image image = imageRepository.findById(imageId)
@@ -51,7 +76,7 @@ public class CollageController {
 
     @GetMapping("/{collageId}")
     public String showEditorPage(@PathVariable Long collageId, Model model) {
-        model.addAttribute("collage", collageService.findCollageById(collageId));
+        model.addAttribute("collage", collageService.findCollageWithLayers(collageId));
         return "editor";
     }
 
@@ -82,13 +107,56 @@ public class CollageController {
 
     @GetMapping("/layers/{layerId}/transformed")
     @ResponseBody
-    public ResponseEntity<Resource> getTransformedLayer(@PathVariable Long layerId) {
+    public ResponseEntity<StreamingResponseBody> getTransformedLayer(@PathVariable Long layerId, WebRequest webRequest) {
+        try {
+            ImageLayer layer = imageService.findImageLayerById(layerId);
+            String etag = "\"" + TransformedLayerCache.Key.of(layer).fingerprint() + "\"";
+            long lastModified = layer.getLastModifiedAt() != null
+                    ? layer.getLastModifiedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                    : -1;
+
+            if (webRequest.checkNotModified(etag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+
+            BufferedImage transformedImage;
+            try (RenderAdmissionController.Permit permit = renderAdmissionController.admit(layer)) {
+                transformedImage = imageService.applyTransformationsToLayer(layer);
+            }
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.IMAGE_PNG)
+                    .cacheControl(CacheControl.noCache())
+                    .eTag(etag)
+                    .lastModified(lastModified)
+                    .body(outputStream -> imageService.writePng(transformedImage, outputStream));
+        } catch (RenderRejectedException e) {
+            return ResponseEntity.status(e.isRetryable() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.PAYLOAD_TOO_LARGE)
+                    .build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/{collageId}/preview")
+    @ResponseBody
+    public ResponseEntity<byte[]> getPreview(@PathVariable Long collageId, WebRequest webRequest) {
         try {
-            Resource resource = imageService.getTransformedLayerAsResource(layerId);
+            CollagePreviewService.Preview preview = collagePreviewService.preview(collageId);
+            String etag = "\"" + collageId + "-" + preview.revision() + "\"";
 
+            if (webRequest.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
             return ResponseEntity.ok()
-                    .header(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue())
-                    .body(resource);
+                    .contentType(MediaType.IMAGE_PNG)
+                    .cacheControl(CacheControl.noCache())
+                    .eTag(etag)
+                    .body(preview.png());
+        } catch (RenderRejectedException e) {
+            return ResponseEntity.status(e.isRetryable() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.PAYLOAD_TOO_LARGE)
+                    .build();
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.notFound().build();
@@ -99,17 +167,78 @@ public class CollageController {
     public String renderCollage(@PathVariable Long collageId, @AuthenticationPrincipal User user,
                                 RedirectAttributes redirectAttributes) {
         try {
-            Image finalImage = collageService.renderAndSaveCollage(collageId, user);
-            redirectAttributes.addFlashAttribute("finalImageId", finalImage.getId());
+            renderJobService.submitSave(collageId, user);
+            redirectAttributes.addFlashAttribute("successMessage",
+                    "Колаж поставлено в чергу на збереження. Результат з'явиться в галереї.");
             return "redirect:/my-images";
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (RejectedExecutionException e) {
             redirectAttributes.addFlashAttribute("errorMessage",
-                    "Не вдалося зберегти колаж.");
+                    "Сервер зараз зайнятий рендерингом. Спробуйте пізніше.");
             return "redirect:/collages/" + collageId;
         }
     }
 
+    public record RenderJobView(String id, Long collageId, String format, RenderJobService.Status status,
+                                String error, Long resultImageId, String resultUrl) {
+        static RenderJobView of(RenderJobService.RenderJob job) {
+            String resultUrl = job.getStatus() == RenderJobService.Status.DONE && job.getResultFile() != null
+                    ? "/collages/render-jobs/" + job.getId() + "/result"
+                    : null;
+            return new RenderJobView(job.getId(), job.getCollageId(), job.getFormat(), job.getStatus(),
+                    job.getError(), job.getResultImageId(), resultUrl);
+        }
+    }
+
+    @PostMapping("/{collageId}/render-jobs")
+    @ResponseBody
+    public ResponseEntity<RenderJobView> submitRenderJob(@PathVariable Long collageId,
+                                                         @RequestParam("format") String format) {
+        try {
+            RenderJobService.RenderJob job = renderJobService.submitExport(collageId, format);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/collages/render-jobs/" + job.getId()))
+                    .body(RenderJobView.of(job));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+    }
+
+    @GetMapping("/render-jobs/{jobId}")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<RenderJobView>> getRenderJob(@PathVariable String jobId,
+                                                                         @RequestParam(defaultValue = "0") long waitSeconds) {
+        return renderJobService.findJob(jobId)
+                .map(job -> {
+                    if (job.isFinished() || waitSeconds <= 0) {
+                        return CompletableFuture.completedFuture(ResponseEntity.ok(RenderJobView.of(job)));
+                    }
+                    return job.getCompletion().copy()
+                            .completeOnTimeout(job, Math.min(waitSeconds, 25), TimeUnit.SECONDS)
+                            .thenApply(finished -> ResponseEntity.ok(RenderJobView.of(finished)));
+                })
+                .orElseGet(() -> CompletableFuture.completedFuture(ResponseEntity.notFound().build()));
+    }
+
+    @GetMapping("/render-jobs/{jobId}/result")
+    public void getRenderJobResult(@PathVariable String jobId,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        RenderJobService.RenderJob job = renderJobService.findJob(jobId).orElse(null);
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (job.getStatus() != RenderJobService.Status.DONE || job.getResultFile() == null) {
+            response.sendError(HttpServletResponse.SC_CONFLICT);
+            return;
+        }
+
+        FileTransfers.sendAttachment(request, response,
+                job.getResultFile(), FileTransfers.mediaTypeFor(job.getFormat()), job.getResultFileName());
+    }
+
     @PostMapping("/{collageId}/layers/{layerId}/update")
     public String updateLayerDetails(@PathVariable Long collageId,
                                      @PathVariable Long layerId,
@@ -118,6 +247,56 @@ public class CollageController {
         return "redirect:/collages/" + collageId;
     }
 
+    public record LayerView(Long id, int positionX, int positionY, int width, int height, double rotationAngle,
+                            Integer cropX, Integer cropY, Integer cropWidth, Integer cropHeight,
+                            String previewUrl) {
+        static LayerView of(ImageLayer layer) {
+            String previewUrl = "/collages/layers/" + layer.getId() + "/transformed?v="
+                    + TransformedLayerCache.Key.of(layer).fingerprint();
+            return new LayerView(layer.getId(), layer.getPositionX(), layer.getPositionY(),
+                    layer.getWidth(), layer.getHeight(), layer.getRotationAngle(),
+                    layer.getCropX(), layer.getCropY(), layer.getCropWidth(), layer.getCropHeight(), previewUrl);
+        }
+    }
+
+    @PostMapping(path = "/{collageId}/layers/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<List<LayerView>> updateLayers(@PathVariable Long collageId,
+                                                        @RequestBody List<CollageService.LayerBatchUpdateDTO> updates) {
+        try {
+            List<LayerView> changed = collageService.updateImageLayers(collageId, updates).stream()
+                    .map(LayerView::of)
+                    .toList();
+            return ResponseEntity.ok(changed);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @GetMapping("/{collageId}/layers/at")
+    @ResponseBody
+    public ResponseEntity<LayerView> hitTestLayer(@PathVariable Long collageId,
+                                                  @RequestParam int x,
+                                                  @RequestParam int y) {
+        return layerIndexService.hitTest(collageId, x, y)
+                .map(layer -> ResponseEntity.ok(LayerView.of(layer)))
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    @GetMapping("/{collageId}/layers/in")
+    @ResponseBody
+    public List<LayerView> layersInRegion(@PathVariable Long collageId,
+                                          @RequestParam int x,
+                                          @RequestParam int y,
+                                          @RequestParam int width,
+                                          @RequestParam int height) {
+        return layerIndexService.layersIn(collageId, new Rectangle(x, y, width, height)).stream()
+                .map(LayerView::of)
+                .toList();
+    }
+
     @PostMapping("/{collageId}/layers/{layerId}/clone")
     public String cloneLayer(@PathVariable Long collageId,
                                      @PathVariable Long layerId,
@@ -187,34 +366,31 @@ public class CollageController {
 
     @GetMapping("/{collageId}/download")
     @ResponseBody
-    public ResponseEntity<Resource> downloadCollage(@PathVariable Long collageId,
-                                                    @RequestParam("format") String format) {
+    public void downloadCollage(@PathVariable Long collageId,
+                                @RequestParam("format") String format,
+                                HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
         try {
             Resource fileResource = collageService.generateCollageResource(collageId, format);
-            MediaType mediaType = switch (format.toLowerCase()) {
-                case "png" -> MediaType.IMAGE_PNG;
-                case "jpg", "jpeg" -> MediaType.IMAGE_JPEG;
-                case "gif" -> MediaType.IMAGE_GIF;
-                case "tiff", "tif" -> MediaType.parseMediaType("image/tiff");
-                case "bmp" -> MediaType.parseMediaType("image/bmp");
-                default -> MediaType.APPLICATION_OCTET_STREAM;
-            };
-
-            String filename = fileResource.getFilename();
-            String encodedFilename = URLEncoder.encode(filename, StandardCharsets.UTF_8.toString())
-                    .replaceAll("\\+", "%20");
-
-            return ResponseEntity.ok()
-                    .contentType(mediaType)
-                    .header(HttpHeaders.CONTENT_DISPOSITION,
-                            "attachment; filename=\"" + encodedFilename + "\"; filename*=UTF-8''" + encodedFilename)
-                    .body(fileResource);
+            try {
+                FileTransfers.sendAttachmentNow(request, response, fileResource.getFile().toPath(),
+                        FileTransfers.mediaTypeFor(format), fileResource.getFilename());
+            } finally {
+                collageService.releaseCollageResource(fileResource);
+            }
 
+        } catch (RenderRejectedException e) {
+            if (e.isRetryable()) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, "30");
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+            } else {
+                response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+            }
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().build();
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
         } catch (Exception e) {
             e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
     }
-}
\ No newline at end of file
+}
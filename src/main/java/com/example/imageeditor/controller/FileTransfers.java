@@ -0,0 +1,139 @@
+package com.example.imageeditor.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Віддає готовий файл з диска без копіювання через купу: якщо контейнер підтримує sendfile,
+ * передача делегується йому, інакше використовується {@link FileChannel#transferTo}.
+ */
+final class FileTransfers {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private FileTransfers() {
+    }
+
+    static void sendAttachment(HttpServletRequest request, HttpServletResponse response,
+                               Path file, MediaType mediaType, String filename) throws IOException {
+        setAttachmentHeader(response, filename);
+        send(request, response, file, mediaType);
+    }
+
+    /**
+     * Віддає файл до повернення з методу, без sendfile: контейнер читав би файл уже після запиту,
+     * коли викликач міг його звільнити.
+     */
+    static void sendAttachmentNow(HttpServletRequest request, HttpServletResponse response,
+                                  Path file, MediaType mediaType, String filename) throws IOException {
+        setAttachmentHeader(response, filename);
+        transfer(request, response, file, mediaType, 0, Files.size(file), false);
+    }
+
+    private static void setAttachmentHeader(HttpServletResponse response, String filename) {
+        String encodedFilename = URLEncoder.encode(filename, StandardCharsets.UTF_8).replaceAll("\\+", "%20");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + encodedFilename + "\"; filename*=UTF-8''" + encodedFilename);
+    }
+
+    /**
+     * Віддає файл з урахуванням заголовків Range та If-Range. Підтримується лише один діапазон;
+     * на запит кількох діапазонів повертається весь файл.
+     */
+    static void sendWithRanges(HttpServletRequest request, HttpServletResponse response,
+                               Path file, MediaType mediaType, String etag) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        boolean rangeAllowed = ifRange == null || (!etag.startsWith("W/") && ifRange.equals(etag));
+        if (rangeHeader == null || !rangeAllowed) {
+            send(request, response, file, mediaType);
+            return;
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            send(request, response, file, mediaType);
+            return;
+        }
+        if (ranges.size() != 1) {
+            send(request, response, file, mediaType);
+            return;
+        }
+
+        long length = Files.size(file);
+        long start = ranges.get(0).getRangeStart(length);
+        long end = ranges.get(0).getRangeEnd(length);
+        if (start >= length || start > end) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        transfer(request, response, file, mediaType, start, end + 1, true);
+    }
+
+    static void send(HttpServletRequest request, HttpServletResponse response,
+                     Path file, MediaType mediaType) throws IOException {
+        transfer(request, response, file, mediaType, 0, Files.size(file), true);
+    }
+
+    private static void transfer(HttpServletRequest request, HttpServletResponse response,
+                                 Path file, MediaType mediaType, long start, long end,
+                                 boolean allowSendfile) throws IOException {
+        response.setContentType(mediaType.toString());
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (allowSendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+    }
+
+    static MediaType mediaTypeFor(String format) {
+        return switch (format.toLowerCase()) {
+            case "png" -> MediaType.IMAGE_PNG;
+            case "jpg", "jpeg" -> MediaType.IMAGE_JPEG;
+            case "gif" -> MediaType.IMAGE_GIF;
+            case "tiff", "tif" -> MediaType.parseMediaType("image/tiff");
+            case "bmp" -> MediaType.parseMediaType("image/bmp");
+            case "webp" -> MediaType.parseMediaType("image/webp");
+            default -> MediaType.APPLICATION_OCTET_STREAM;
+        };
+    }
+}
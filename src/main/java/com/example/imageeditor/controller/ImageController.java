@@ -5,6 +5,8 @@ import com.example.imageeditor.domain.Image;
 import com.example.imageeditor.domain.User;
 import com.example.imageeditor.repository.CollageRepository;
 import com.example.imageeditor.service.ImageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
@@ -15,18 +17,15 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.Files;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 @RequiredArgsConstructor
@@ -36,24 +35,29 @@ public class ImageController {
     private final CollageRepository collageRepository;
 
     @GetMapping("/api/images/{filename:.+}")
-    @ResponseBody
-    public ResponseEntity<Resource> serveFile(@PathVariable String filename) {
+    public void serveFile(@PathVariable String filename,
+                          HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        ImageService.StoredFile storedFile = imageService.findStoredFile(filename).orElse(null);
+        if (storedFile == null || !Files.isReadable(storedFile.path())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-        try {
-            Path file = Paths.get("uploads").resolve(filename);
-            Resource resource = new UrlResource(file.toUri());
-
-            if (resource.exists() || resource.isReadable()) {
-                return ResponseEntity.ok()
-                        .header(HttpHeaders.CONTENT_DISPOSITION,
-                                "inline; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                throw new RuntimeException("Неможливо прочитати файл");
-            }
-        } catch (MalformedURLException e) {
-            throw new RuntimeException("Помилка: " + e.getMessage());
+        String etag = storedFile.contentHash() != null
+                ? "\"" + storedFile.contentHash() + "\""
+                : "W/\"" + Files.size(storedFile.path()) + "-"
+                        + Files.getLastModifiedTime(storedFile.path()).toMillis() + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable().getHeaderValue());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
         }
+
+        FileTransfers.sendWithRanges(request, response,
+                storedFile.path(), FileTransfers.mediaTypeFor(storedFile.format()), etag);
     }
 
     @GetMapping("/my-images")
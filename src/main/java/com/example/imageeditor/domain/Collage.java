@@ -45,6 +45,14 @@ public class Collage {
     @Column(name = "preview_filename")
     private String previewFileName;
 
+    /**
+     * Лічильник змін, з яким пов'язані кеші результатів і прев'ю. У базі його збільшує лише
+     * {@code CollageRepository#incrementRevision} атомарним UPDATE: паралельні правки, що завантажили
+     * ту саму ревізію, інакше записали б однакове значення для різного вмісту.
+     */
+    @Column(nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private long revision = 0;
+
     @Transient
     private CollageState currentState;
 
@@ -63,6 +71,12 @@ public class Collage {
         }
     }
 
+    /** Оновлює ревізію лише в пам'яті; у базу її записує {@code CollageService}. */
+    public void markModified() {
+        this.revision++;
+        this.lastModifiedAt = LocalDateTime.now();
+    }
+
     public void changeState(CollageState newState) {
         this.currentState = newState;
         this.status = newState.getStatusName();
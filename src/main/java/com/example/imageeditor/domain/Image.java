@@ -3,11 +3,16 @@ package com.example.imageeditor.domain;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 @Entity
 @Table(name = "images")
+@BatchSize(size = 100)
 @Data
 @NoArgsConstructor
 public class Image {
@@ -16,9 +21,12 @@ public class Image {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    @Column(nullable = false, unique = true)
     private String fileName;
 
+    @Column(length = 64)
+    private String contentHash;
+
     @Column
     private String title;
 
@@ -40,4 +48,27 @@ public class Image {
 
     @Column(nullable = false, columnDefinition = "boolean default false")
     private boolean renderedResult = false;
+
+    @ElementCollection
+    @CollectionTable(name = "image_renditions", joinColumns = @JoinColumn(name = "image_id"))
+    @OrderBy("longEdge ASC")
+    @BatchSize(size = 100)
+    private List<ImageRendition> renditions = new ArrayList<>();
+
+    public String fileNameForLongEdge(int requiredLongEdge) {
+        return renditions.stream()
+                .filter(rendition -> rendition.getLongEdge() >= requiredLongEdge)
+                .findFirst()
+                .map(ImageRendition::getFileName)
+                .orElse(fileName);
+    }
+
+    public Optional<ImageRendition> renditionForScale(double requiredScale) {
+        if (width <= 0) {
+            return Optional.empty();
+        }
+        return renditions.stream()
+                .filter(rendition -> (double) rendition.getWidth() / width >= requiredScale)
+                .findFirst();
+    }
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package com.example.imageeditor.domain;
 
 import com.example.imageeditor.service.CollageService;
-import com.example.imageeditor.service.ImageService;
+import com.example.imageeditor.service.LayerImageSource;
 import com.example.imageeditor.service.Prototype;
 import jakarta.persistence.*;
 import lombok.Data;
@@ -9,8 +9,10 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 
 @Entity
@@ -34,13 +36,33 @@ public class ImageLayer extends LayerComponent implements Prototype, Cloneable {
     private String effectsJson;
 
     @Override
-    public void render(Graphics2D g2d, ImageService imageService) throws IOException {
-        BufferedImage img = imageService.applyTransformationsToLayer(this.getId());
+    public void render(Graphics2D g2d, LayerImageSource images) throws IOException {
+        BufferedImage img = images.imageFor(this);
         g2d.drawImage(img, getPositionX(), getPositionY(), null);
     }
 
+    @Override
+    public Rectangle getBounds() {
+        if (getRotationAngle() == 0.0) {
+            return new Rectangle(getPositionX(), getPositionY(), width, height);
+        }
+        double rads = Math.toRadians(getRotationAngle());
+        double sin = Math.abs(Math.sin(rads));
+        double cos = Math.abs(Math.cos(rads));
+        int rotatedWidth = (int) Math.floor(width * cos + height * sin);
+        int rotatedHeight = (int) Math.floor(height * cos + width * sin);
+        return new Rectangle(getPositionX(), getPositionY(), rotatedWidth, rotatedHeight);
+    }
+
+    @Override
+    public void collectImageLayers(List<ImageLayer> target) {
+        target.add(this);
+    }
+
     @Override
     public void applyUpdate(CollageService.LayerUpdateDTO dto) {
+        Optional.ofNullable(dto.positionX).ifPresent(this::setPositionX);
+        Optional.ofNullable(dto.positionY).ifPresent(this::setPositionY);
         Optional.ofNullable(dto.width).ifPresent(this::setWidth);
         Optional.ofNullable(dto.height).ifPresent(this::setHeight);
         Optional.ofNullable(dto.rotationAngle).ifPresent(this::setRotationAngle);
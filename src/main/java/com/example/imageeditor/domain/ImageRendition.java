@@ -0,0 +1,26 @@
+package com.example.imageeditor.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageRendition {
+
+    @Column(nullable = false)
+    private int longEdge;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    private int width;
+    private int height;
+
+    @Column(length = 64)
+    private String contentHash;
+}
@@ -1,13 +1,16 @@
 package com.example.imageeditor.domain;
 
 import com.example.imageeditor.service.CollageService;
-import com.example.imageeditor.service.ImageService;
+import com.example.imageeditor.service.LayerImageSource;
 import com.example.imageeditor.service.Prototype;
 import jakarta.persistence.*;
 import lombok.Data;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Entity
 @Table(name = "layer_components")
@@ -24,11 +27,22 @@ public abstract class LayerComponent implements Prototype, Cloneable {
     private double rotationAngle = 0.0;
     private int zIndex;
 
+    private LocalDateTime lastModifiedAt = LocalDateTime.now();
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "collage_id")
     private Collage collage;
 
-    public abstract void render(Graphics2D g2d, ImageService imageService) throws IOException;
+    @PreUpdate
+    public void touch() {
+        this.lastModifiedAt = LocalDateTime.now();
+    }
+
+    public abstract void render(Graphics2D g2d, LayerImageSource images) throws IOException;
+
+    public abstract Rectangle getBounds();
+
+    public abstract void collectImageLayers(List<ImageLayer> target);
 
     public abstract void applyUpdate(CollageService.LayerUpdateDTO dto);
 
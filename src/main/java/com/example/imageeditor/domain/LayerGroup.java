@@ -1,17 +1,29 @@
 package com.example.imageeditor.domain;
 
 import com.example.imageeditor.service.CollageService;
-import com.example.imageeditor.service.ImageService;
+import com.example.imageeditor.service.LayerImageSource;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ * Група шарів із власним перетворенням: позиція й поворот групи застосовуються до всього піддерева.
+ * До появи цього перетворення власні позиція й поворот групи при рендерингу ігнорувалися;
+ * такі рядки мають {@code owns_transform = NULL} і при завантаженні мігрують, див. {@link #migrateLegacyTransform()}.
+ */
 @Entity
 @DiscriminatorValue("COMPOSITE")
 @Data
@@ -20,21 +32,142 @@ import java.util.List;
 public class LayerGroup extends LayerComponent {
 
     @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
+    @Fetch(FetchMode.SUBSELECT)
     @JoinColumn(name = "parent_group_id")
     @OrderBy("zIndex ASC")
     private List<LayerComponent> children = new ArrayList<>();
 
+    private Boolean ownsTransform = Boolean.TRUE;
+
+    /**
+     * Стара група малювалася без власного зсуву й повороту, тож вони скидаються, щоб вигляд колажу
+     * не змінився; дочірні шари зберігають свої координати. Зміна зберігається з першим же записом.
+     */
+    @PostLoad
+    void migrateLegacyTransform() {
+        if (ownsTransform == null) {
+            setPositionX(0);
+            setPositionY(0);
+            setRotationAngle(0.0);
+            ownsTransform = Boolean.TRUE;
+        }
+    }
+
+    /**
+     * Група малюється як одне ціле: сплощений растер дочірніх компонентів зсувається
+     * на позицію групи й повертається навколо свого центру, так само як шар.
+     */
+    @Override
+    public void render(Graphics2D g2d, LayerImageSource images) throws IOException {
+        Rectangle local = getChildrenBounds();
+        if (local.isEmpty()) {
+            return;
+        }
+        BufferedImage raster = images.groupImageFor(this);
+        AffineTransform saved = g2d.getTransform();
+        try {
+            g2d.transform(toParentTransform());
+            g2d.drawImage(raster, local.x, local.y, null);
+        } finally {
+            g2d.setTransform(saved);
+        }
+    }
+
+    /**
+     * Малює дочірні компоненти в окремий растер розміром з {@link #getChildrenBounds()}.
+     */
+    public BufferedImage flatten(LayerImageSource images) throws IOException {
+        Rectangle local = getChildrenBounds();
+        BufferedImage raster = new BufferedImage(Math.max(1, local.width), Math.max(1, local.height),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = raster.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.translate(-local.x, -local.y);
+            for (LayerComponent child : children) {
+                child.render(g2d, images);
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return raster;
+    }
+
+    /**
+     * Межі дочірніх компонентів у координатах групи, до її власного зсуву й повороту.
+     */
+    public Rectangle getChildrenBounds() {
+        Rectangle bounds = null;
+        for (LayerComponent child : children) {
+            bounds = bounds == null ? child.getBounds() : bounds.union(child.getBounds());
+        }
+        return bounds != null ? bounds : new Rectangle();
+    }
+
     @Override
-    public void render(Graphics2D g2d, ImageService imageService) throws IOException {
+    public Rectangle getBounds() {
+        Rectangle local = getChildrenBounds();
+        if (local.isEmpty() || getRotationAngle() == 0.0) {
+            local.translate(getPositionX(), getPositionY());
+            return local;
+        }
+        double rads = Math.toRadians(getRotationAngle());
+        double sin = Math.abs(Math.sin(rads));
+        double cos = Math.abs(Math.cos(rads));
+        int rotatedWidth = (int) Math.floor(local.width * cos + local.height * sin);
+        int rotatedHeight = (int) Math.floor(local.height * cos + local.width * sin);
+        return new Rectangle(local.x + getPositionX(), local.y + getPositionY(), rotatedWidth, rotatedHeight);
+    }
+
+    /**
+     * Переводить координати дочірніх компонентів у координати батька: поворот навколо центру
+     * їхніх меж, вписаних у {@link #getBounds()}, і зсув на позицію групи.
+     */
+    public AffineTransform toParentTransform() {
+        if (!hasTransform()) {
+            return new AffineTransform();
+        }
+        Rectangle local = getChildrenBounds();
+        Rectangle bounds = getBounds();
+        AffineTransform transform = AffineTransform.getTranslateInstance(
+                bounds.x + (bounds.width - local.width) / 2.0,
+                bounds.y + (bounds.height - local.height) / 2.0);
+        transform.rotate(Math.toRadians(getRotationAngle()), local.width / 2.0, local.height / 2.0);
+        transform.translate(-local.x, -local.y);
+        return transform;
+    }
+
+    public boolean hasTransform() {
+        return getPositionX() != 0 || getPositionY() != 0 || getRotationAngle() != 0.0;
+    }
+
+    @Override
+    public void collectImageLayers(List<ImageLayer> target) {
         for (LayerComponent child : children) {
-            child.render(g2d, imageService);
+            child.collectImageLayers(target);
         }
     }
 
+    /**
+     * Позиція й поворот задають перетворення самої групи і до дочірніх компонентів не копіюються;
+     * розмір і кадрування, як і раніше, застосовуються до кожного шару групи.
+     */
     @Override
     public void applyUpdate(CollageService.LayerUpdateDTO dto) {
+        Optional.ofNullable(dto.positionX).ifPresent(this::setPositionX);
+        Optional.ofNullable(dto.positionY).ifPresent(this::setPositionY);
+        Optional.ofNullable(dto.rotationAngle).ifPresent(this::setRotationAngle);
+
+        CollageService.LayerUpdateDTO childUpdate = new CollageService.LayerUpdateDTO();
+        childUpdate.width = dto.width;
+        childUpdate.height = dto.height;
+        childUpdate.cropX = dto.cropX;
+        childUpdate.cropY = dto.cropY;
+        childUpdate.cropWidth = dto.cropWidth;
+        childUpdate.cropHeight = dto.cropHeight;
         for (LayerComponent child : children) {
-            child.applyUpdate(dto);
+            child.applyUpdate(childUpdate);
         }
     }
 
@@ -51,14 +184,23 @@ public class LayerGroup extends LayerComponent {
         return newGroup;
     }
 
+    /**
+     * Знімок власного перетворення групи. Розмір записується лише для довідки: він визначається
+     * дочірніми шарами, тож {@link #restoreFromMemento} його не відновлює, а знімки шарів групи
+     * записуються в той самий крок історії окремо.
+     */
     @Override
     public ImageLayerMemento createMemento() {
-        throw new UnsupportedOperationException("Memento не підтримується для цієї групи");
+        Rectangle bounds = getBounds();
+        return new ImageLayerMemento(getId(), getPositionX(), getPositionY(), bounds.width, bounds.height,
+                getRotationAngle(), null, null, null, null);
     }
 
     @Override
     public void restoreFromMemento(ImageLayerMemento memento) {
-        throw new UnsupportedOperationException("Memento не підтримується для цієї групи");
+        setPositionX(memento.positionX());
+        setPositionY(memento.positionY());
+        setRotationAngle(memento.rotationAngle());
     }
 
     public void add(LayerComponent component) {
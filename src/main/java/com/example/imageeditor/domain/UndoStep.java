@@ -0,0 +1,41 @@
+package com.example.imageeditor.domain;
+
+import com.example.imageeditor.service.UndoHistory;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Один крок історії скасування колажу: упаковані знімки шарів, див. {@code UndoHistory}.
+ */
+@Entity
+@Table(name = "undo_steps", indexes = @Index(columnList = "collage_id, direction, id"))
+@Data
+@NoArgsConstructor
+public class UndoStep {
+
+    public enum Direction {
+        UNDO,
+        REDO
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long collageId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private Direction direction;
+
+    @Column(nullable = false, length = UndoHistory.MAX_PAYLOAD_BYTES)
+    private byte[] payload;
+
+    public UndoStep(Long collageId, Direction direction, byte[] payload) {
+        this.collageId = collageId;
+        this.direction = direction;
+        this.payload = payload;
+    }
+}
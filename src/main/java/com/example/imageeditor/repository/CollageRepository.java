@@ -3,9 +3,30 @@ package com.example.imageeditor.repository;
 import com.example.imageeditor.domain.Collage;
 import com.example.imageeditor.domain.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface CollageRepository extends JpaRepository<Collage, Long> {
     List<Collage> findByUserOrderByLastModifiedAtDesc(User user);
+
+    @Query("SELECT DISTINCT c FROM Collage c LEFT JOIN FETCH c.layers WHERE c.id = :id")
+    Optional<Collage> findWithLayersById(@Param("id") Long id);
+
+    @Query("SELECT c.revision FROM Collage c WHERE c.id = :id")
+    Optional<Long> findRevisionById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE Collage c SET c.revision = c.revision + 1, c.lastModifiedAt = :modifiedAt WHERE c.id = :id")
+    void incrementRevision(@Param("id") Long id, @Param("modifiedAt") LocalDateTime modifiedAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Collage c SET c.previewFileName = :fileName WHERE c.id = :id")
+    void updatePreviewFileName(@Param("id") Long id, @Param("fileName") String fileName);
 }
@@ -26,4 +26,8 @@ public interface LayerComponentRepository extends JpaRepository<LayerComponent,
 
     @Query("SELECT il FROM ImageLayer il WHERE il.image = :image")
     List<ImageLayer> findAllImageLayersByImage(@Param("image") Image image);
+
+    @Query("SELECT il FROM ImageLayer il LEFT JOIN FETCH il.image i LEFT JOIN FETCH i.renditions " +
+            "WHERE il.collage.id = :collageId")
+    List<ImageLayer> findAllImageLayersWithImageByCollageId(@Param("collageId") Long collageId);
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.example.imageeditor.repository;
+
+import com.example.imageeditor.domain.UndoStep;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface UndoStepRepository extends JpaRepository<UndoStep, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<UndoStep> findFirstByCollageIdAndDirectionOrderByIdDesc(Long collageId, UndoStep.Direction direction);
+
+    @Query("SELECT s.id FROM UndoStep s WHERE s.collageId = :collageId AND s.direction = :direction ORDER BY s.id DESC")
+    List<Long> findIdsNewestFirst(@Param("collageId") Long collageId,
+                                  @Param("direction") UndoStep.Direction direction,
+                                  Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM UndoStep s WHERE s.collageId = :collageId AND s.direction = :direction AND s.id <= :maxId")
+    void deleteUpTo(@Param("collageId") Long collageId,
+                    @Param("direction") UndoStep.Direction direction,
+                    @Param("maxId") Long maxId);
+
+    @Modifying
+    @Query("DELETE FROM UndoStep s WHERE s.collageId = :collageId AND s.direction = :direction")
+    void deleteByCollageIdAndDirection(@Param("collageId") Long collageId,
+                                       @Param("direction") UndoStep.Direction direction);
+
+    @Modifying
+    @Query("DELETE FROM UndoStep s WHERE s.collageId = :collageId")
+    void deleteByCollageId(@Param("collageId") Long collageId);
+}
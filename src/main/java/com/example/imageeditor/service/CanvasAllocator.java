@@ -0,0 +1,203 @@
+package com.example.imageeditor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Виділяє полотна для рендерингу. Полотна, більші за поріг у пікселях, розміщуються
+ * у тимчасовому файлі, відображеному в пам'ять, а не в купі: такий постер не потребує
+ * збільшення -Xmx. На нього малюють смугами через {@link #copyBand}, а кодувальники читають
+ * рядки напряму з відображеного файлу.
+ */
+@Component
+public class CanvasAllocator {
+
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final long mappedThresholdPixels;
+    private final int bandHeight;
+    private final Path mappedDirectory;
+
+    public CanvasAllocator(@Value("${collage.render.mapped-canvas.threshold-pixels:50000000}") long mappedThresholdPixels,
+                           @Value("${collage.render.mapped-canvas.band-height:512}") int bandHeight,
+                           @Value("${collage.render.mapped-canvas.dir:}") String mappedDirectory) {
+        this.mappedThresholdPixels = mappedThresholdPixels;
+        this.bandHeight = Math.max(1, bandHeight);
+        this.mappedDirectory = Paths.get(mappedDirectory.isBlank()
+                ? System.getProperty("java.io.tmpdir")
+                : mappedDirectory);
+    }
+
+    public boolean shouldMap(int width, int height) {
+        return (long) width * height > mappedThresholdPixels;
+    }
+
+    public int bandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * Скільки купи займе полотно: для відображеного полотна — лише смуги, що рендеряться паралельно.
+     */
+    public long estimateHeapBytes(int width, int height) {
+        if (!shouldMap(width, height)) {
+            return (long) width * height * 4;
+        }
+        return (long) width * Math.min(bandHeight, height) * 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Полотно в купі. Непрозоре полотно {@code TYPE_3BYTE_BGR} одразу заливається білим.
+     */
+    public BufferedImage allocate(int width, int height, boolean opaque) {
+        if (!opaque) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = canvas.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return canvas;
+    }
+
+    /**
+     * Полотно у відображеному файлі з тим самим розміщенням пікселів, що й у {@link #allocate}.
+     * Файл видаляється одразу після відображення, місце на диску звільняється разом із полотном.
+     */
+    public BufferedImage allocateMapped(int width, int height, boolean opaque) throws IOException {
+        int samplesPerPixel = opaque ? 3 : 1;
+        long elements = (long) width * height * samplesPerPixel;
+        if (elements > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Полотно завелике: " + width + "x" + height);
+        }
+
+        ColorModel colorModel;
+        SampleModel sampleModel;
+        MappedDataBuffer buffer;
+        if (opaque) {
+            colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                    new int[]{8, 8, 8}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            sampleModel = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height,
+                    3, width * 3, new int[]{2, 1, 0});
+            buffer = new MappedDataBuffer(DataBuffer.TYPE_BYTE, (int) elements, mappedDirectory);
+        } else {
+            DirectColorModel argb = (DirectColorModel) ColorModel.getRGBdefault();
+            colorModel = argb;
+            sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, argb.getMasks());
+            buffer = new MappedDataBuffer(DataBuffer.TYPE_INT, (int) elements, mappedDirectory);
+        }
+        return new BufferedImage(colorModel, Raster.createWritableRaster(sampleModel, buffer, null), false, null);
+    }
+
+    /**
+     * Копіює перші {@code rows} рядків смуги, отриманої з {@link #allocate} з шириною полотна,
+     * у відображене полотно, починаючи з рядка {@code y}.
+     */
+    public static void copyBand(BufferedImage canvas, int y, BufferedImage band, int rows) {
+        MappedDataBuffer target = (MappedDataBuffer) canvas.getRaster().getDataBuffer();
+        DataBuffer source = band.getRaster().getDataBuffer();
+        if (source instanceof DataBufferInt ints) {
+            target.put(y * canvas.getWidth(), ints.getData(), rows * canvas.getWidth());
+        } else {
+            int stride = canvas.getWidth() * 3;
+            target.put(y * stride, ((DataBufferByte) source).getData(), rows * stride);
+        }
+    }
+
+    /**
+     * {@link DataBuffer} поверх файлу, відображеного сегментами до 1 ГБ, бо один
+     * {@link java.nio.MappedByteBuffer} адресується лише через int.
+     */
+    static final class MappedDataBuffer extends DataBuffer {
+
+        private final ByteBuffer[] segments;
+        private final int elementSize;
+        private final int elementsPerSegment;
+
+        MappedDataBuffer(int dataType, int size, Path directory) throws IOException {
+            super(dataType, size);
+            this.elementSize = DataBuffer.getDataTypeSize(dataType) / 8;
+            this.elementsPerSegment = (int) (SEGMENT_BYTES / elementSize);
+
+            long totalBytes = (long) size * elementSize;
+            this.segments = new ByteBuffer[(int) ((totalBytes + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "canvas-", ".raw");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+                for (int i = 0; i < segments.length; i++) {
+                    long position = i * SEGMENT_BYTES;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                                    Math.min(SEGMENT_BYTES, totalBytes - position))
+                            .order(ByteOrder.nativeOrder());
+                }
+            }
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            ByteBuffer segment = segments[i / elementsPerSegment];
+            int position = (i % elementsPerSegment) * elementSize;
+            return elementSize == 4 ? segment.getInt(position) : segment.get(position) & 0xFF;
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            ByteBuffer segment = segments[i / elementsPerSegment];
+            int position = (i % elementsPerSegment) * elementSize;
+            if (elementSize == 4) {
+                segment.putInt(position, val);
+            } else {
+                segment.put(position, (byte) val);
+            }
+        }
+
+        void put(int offset, int[] data, int length) {
+            int copied = 0;
+            while (copied < length) {
+                int element = offset + copied;
+                int position = element % elementsPerSegment;
+                int count = Math.min(length - copied, elementsPerSegment - position);
+                segments[element / elementsPerSegment].asIntBuffer().put(position, data, copied, count);
+                copied += count;
+            }
+        }
+
+        void put(int offset, byte[] data, int length) {
+            int copied = 0;
+            while (copied < length) {
+                int element = offset + copied;
+                int position = element % elementsPerSegment;
+                int count = Math.min(length - copied, elementsPerSegment - position);
+                segments[element / elementsPerSegment].put(position, data, copied, count);
+                copied += count;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Живий попередній перегляд колажу. Для кожного колажу зберігається скомпоноване полотно
+ * і знімок стану його компонентів. Після зміни перекомпоновується лише об'єднання старих
+ * і нових меж змінених компонентів; повний рендер потрібен лише для першого перегляду,
+ * зміни розміру полотна або коли змінена область займає більшу частину полотна.
+ * Полотна обмежені сумарним розміром у байтах, найдавніше переглянуті витісняються.
+ */
+@Service
+public class CollagePreviewService {
+
+    public record Preview(long revision, byte[] png) {
+    }
+
+    private record ComponentState(Rectangle bounds, String signature) {
+    }
+
+    private static final class Entry {
+        private BufferedImage canvas;
+        private Map<Long, ComponentState> components;
+        private long revision;
+        private byte[] png;
+        private long pngRevision = -1;
+    }
+
+    private final CollageService collageService;
+    private final CollageRenderer collageRenderer;
+    private final ImageService imageService;
+    private final RenderAdmissionController renderAdmissionController;
+    private final long maxBytes;
+    private final double fullRenderRatio;
+
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public CollagePreviewService(CollageService collageService,
+                                 CollageRenderer collageRenderer,
+                                 ImageService imageService,
+                                 RenderAdmissionController renderAdmissionController,
+                                 @Value("${collage.preview.max-bytes:268435456}") long maxBytes,
+                                 @Value("${collage.preview.full-render-ratio:0.5}") double fullRenderRatio) {
+        this.collageService = collageService;
+        this.collageRenderer = collageRenderer;
+        this.imageService = imageService;
+        this.renderAdmissionController = renderAdmissionController;
+        this.maxBytes = maxBytes;
+        this.fullRenderRatio = fullRenderRatio;
+    }
+
+    public Preview preview(Long collageId) throws IOException {
+        Collage collage = collageService.loadCollageForRender(collageId);
+        Entry entry = entryFor(collageId);
+        synchronized (entry) {
+            BufferedImage canvas;
+            try (RenderAdmissionController.Permit permit = renderAdmissionController.admit(collage)) {
+                canvas = update(entry, collage);
+            }
+            if (entry.pngRevision != entry.revision) {
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                imageService.writePng(canvas, png);
+                entry.png = png.toByteArray();
+                entry.pngRevision = entry.revision;
+            }
+            return new Preview(entry.revision, entry.png);
+        }
+    }
+
+    /**
+     * Приводить полотно попереднього перегляду до стану {@code collage} і повертає його.
+     */
+    public BufferedImage update(Collage collage) throws IOException {
+        Entry entry = entryFor(collage.getId());
+        synchronized (entry) {
+            return update(entry, collage);
+        }
+    }
+
+    public synchronized void invalidate(Long collageId) {
+        Entry entry = entries.remove(collageId);
+        if (entry != null) {
+            totalBytes -= weightOf(entry);
+        }
+    }
+
+    private synchronized Entry entryFor(Long collageId) {
+        return entries.computeIfAbsent(collageId, id -> new Entry());
+    }
+
+    private BufferedImage update(Entry entry, Collage collage) throws IOException {
+        if (entry.canvas != null && entry.revision == collage.getRevision()) {
+            return entry.canvas;
+        }
+
+        Map<Long, ComponentState> components = snapshot(collage);
+        Rectangle dirty = entry.canvas != null
+                && entry.canvas.getWidth() == collage.getCanvasWidth()
+                && entry.canvas.getHeight() == collage.getCanvasHeight()
+                ? dirtyRegion(entry.components, components)
+                : null;
+        long canvasArea = (long) collage.getCanvasWidth() * collage.getCanvasHeight();
+
+        long previousWeight = weightOf(entry);
+        if (dirty == null || (long) dirty.width * dirty.height > fullRenderRatio * canvasArea) {
+            entry.canvas = collageRenderer.render(collage, CollageRenderer.RenderMode.TILED);
+        } else if (!dirty.isEmpty()) {
+            collageRenderer.renderRegion(entry.canvas, collage, dirty);
+        }
+        entry.components = components;
+        entry.revision = collage.getRevision();
+        entry.png = null;
+        entry.pngRevision = -1;
+
+        synchronized (this) {
+            if (entries.get(collage.getId()) == entry) {
+                totalBytes += weightOf(entry) - previousWeight;
+                evictOverflow(collage.getId());
+            }
+        }
+        return entry.canvas;
+    }
+
+    /**
+     * Об'єднання старих і нових меж компонентів, що з'явилися, зникли чи змінилися;
+     * порожній прямокутник, якщо видимих змін немає.
+     */
+    private static Rectangle dirtyRegion(Map<Long, ComponentState> before, Map<Long, ComponentState> after) {
+        Rectangle dirty = new Rectangle();
+        Set<Long> ids = new HashSet<>(before.keySet());
+        ids.addAll(after.keySet());
+        for (Long id : ids) {
+            ComponentState old = before.get(id);
+            ComponentState current = after.get(id);
+            if (Objects.equals(old, current)) {
+                continue;
+            }
+            if (old != null) {
+                dirty = union(dirty, old.bounds());
+            }
+            if (current != null) {
+                dirty = union(dirty, current.bounds());
+            }
+        }
+        return dirty;
+    }
+
+    private static Rectangle union(Rectangle dirty, Rectangle bounds) {
+        if (bounds.isEmpty()) {
+            return dirty;
+        }
+        return dirty.isEmpty() ? new Rectangle(bounds) : dirty.union(bounds);
+    }
+
+    private static Map<Long, ComponentState> snapshot(Collage collage) {
+        Map<Long, ComponentState> components = new HashMap<>();
+        for (LayerComponent component : collage.getLayers()) {
+            List<ImageLayer> imageLayers = new ArrayList<>();
+            component.collectImageLayers(imageLayers);
+
+            StringBuilder signature = new StringBuilder().append(component.getZIndex())
+                    .append('@').append(component.getPositionX()).append(',').append(component.getPositionY())
+                    .append('r').append(component.getRotationAngle());
+            for (ImageLayer layer : imageLayers) {
+                signature.append(';').append(layer.getId())
+                        .append('@').append(layer.getPositionX()).append(',').append(layer.getPositionY())
+                        .append('z').append(layer.getZIndex())
+                        .append(TransformedLayerCache.Key.of(layer));
+            }
+            components.put(component.getId(), new ComponentState(component.getBounds(), signature.toString()));
+        }
+        return components;
+    }
+
+    private void evictOverflow(Long keep) {
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Long, Entry> eldest = it.next();
+            if (!eldest.getKey().equals(keep)) {
+                totalBytes -= weightOf(eldest.getValue());
+                it.remove();
+            }
+        }
+        if (totalBytes > maxBytes) {
+            totalBytes -= weightOf(entries.remove(keep));
+        }
+    }
+
+    private static long weightOf(Entry entry) {
+        BufferedImage canvas = entry.canvas;
+        return canvas != null ? (long) canvas.getWidth() * canvas.getHeight() * 4 : 0;
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.domain.LayerGroup;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Компонує шари колажу на полотно. Трансформації шарів обчислюються паралельно на спільному
+ * обмеженому пулі, а компонування завжди йде в порядку zIndex.
+ * У режимі {@link RenderMode#TILED} полотно ділиться на плитки, які малюються паралельно:
+ * кожна плитка отримує з {@link LayerSpatialIndex} лише шари, що її перетинають,
+ * у тому самому порядку, що й {@link Collage#getLayers()}.
+ * Полотна понад поріг {@link CanvasAllocator} рендеряться смугами у відображений файл незалежно від режиму.
+ */
+@Component
+public class CollageRenderer {
+
+    public enum RenderMode {
+        SEQUENTIAL,
+        TILED
+    }
+
+    private final LayerImageSource layerImageSource;
+    private final CanvasAllocator canvasAllocator;
+    private final RenderMetrics renderMetrics;
+    private final RenderMode defaultMode;
+    private final int tileSize;
+    private final ForkJoinPool tilePool;
+    private final ExecutorService preparationPool;
+    private final int maxParallelLayersPerRender;
+
+    public CollageRenderer(LayerImageSource layerImageSource,
+                           CanvasAllocator canvasAllocator,
+                           RenderMetrics renderMetrics,
+                           @Value("${collage.render.mode:sequential}") String defaultMode,
+                           @Value("${collage.render.tile-size:1024}") int tileSize,
+                           @Value("${collage.render.tile-parallelism:0}") int tileParallelism,
+                           @Value("${collage.render.preparation-threads:0}") int preparationThreads,
+                           @Value("${collage.render.max-parallel-layers-per-render:4}") int maxParallelLayersPerRender) {
+        this.layerImageSource = layerImageSource;
+        this.canvasAllocator = canvasAllocator;
+        this.renderMetrics = renderMetrics;
+        this.defaultMode = RenderMode.valueOf(defaultMode.toUpperCase());
+        this.tileSize = tileSize;
+        this.tilePool = new ForkJoinPool(tileParallelism > 0
+                ? tileParallelism
+                : Runtime.getRuntime().availableProcessors());
+        this.preparationPool = Executors.newFixedThreadPool(preparationThreads > 0
+                ? preparationThreads
+                : Runtime.getRuntime().availableProcessors());
+        this.maxParallelLayersPerRender = Math.max(1, maxParallelLayersPerRender);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tilePool.shutdown();
+        preparationPool.shutdown();
+    }
+
+    public BufferedImage render(Collage collage) throws IOException {
+        return render(collage, defaultMode, false);
+    }
+
+    /**
+     * @param opaque {@code true} для форматів без альфа-каналу: шари компонуються одразу
+     *               на біле полотно {@code TYPE_3BYTE_BGR}, яке кодувальники JPEG і BMP приймають без конвертації
+     */
+    public BufferedImage render(Collage collage, boolean opaque) throws IOException {
+        return render(collage, defaultMode, opaque);
+    }
+
+    public BufferedImage render(Collage collage, RenderMode mode) throws IOException {
+        return render(collage, mode, false);
+    }
+
+    public BufferedImage render(Collage collage, RenderMode mode, boolean opaque) throws IOException {
+        int width = collage.getCanvasWidth();
+        int height = collage.getCanvasHeight();
+        List<LayerComponent> layers = collage.getLayers();
+        renderMetrics.recordCollage(collage);
+
+        if (canvasAllocator.shouldMap(width, height)) {
+            BufferedImage canvas = canvasAllocator.allocateMapped(width, height, opaque);
+            LayerImageSource images = prepareLayerImages(layers);
+            return renderMetrics.timeComposite("banded", () -> {
+                renderBanded(canvas, layers, images, opaque);
+                return canvas;
+            });
+        }
+
+        BufferedImage canvas = canvasAllocator.allocate(width, height, opaque);
+        LayerImageSource images = prepareLayerImages(layers);
+
+        if (mode == RenderMode.TILED && (canvas.getWidth() > tileSize || canvas.getHeight() > tileSize)) {
+            return renderMetrics.timeComposite("tiled", () -> {
+                renderTiled(canvas, layers, images);
+                return canvas;
+            });
+        }
+        return renderMetrics.timeComposite("sequential", () -> {
+            Graphics2D g2d = createGraphics(canvas);
+            try {
+                for (LayerComponent component : layers) {
+                    component.render(g2d, images);
+                }
+            } finally {
+                g2d.dispose();
+            }
+            return canvas;
+        });
+    }
+
+    /**
+     * Перекомпоновує лише {@code region} уже відрендереного полотна {@code TYPE_INT_ARGB}: область
+     * очищується, і в неї малюються тільки компоненти, що її перетинають, у порядку zIndex.
+     * Вартість пропорційна площі області та кількості шарів у ній, а не розміру всього колажу.
+     */
+    public void renderRegion(BufferedImage canvas, Collage collage, Rectangle region) throws IOException {
+        Rectangle clipped = region.intersection(new Rectangle(canvas.getWidth(), canvas.getHeight()));
+        if (clipped.isEmpty()) {
+            return;
+        }
+        LayerSpatialIndex index = LayerSpatialIndex.build(collage.getLayers(), canvas.getWidth(), canvas.getHeight());
+        List<LayerComponent> visible = index.componentsIn(clipped);
+        LayerImageSource images = prepareLayerImages(visible);
+
+        renderMetrics.timeComposite("region", () -> {
+            BufferedImage regionView = canvas.getSubimage(clipped.x, clipped.y, clipped.width, clipped.height);
+            Graphics2D g2d = regionView.createGraphics();
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, clipped.width, clipped.height);
+            g2d.dispose();
+            drawRegion(regionView, clipped, visible, images);
+            return null;
+        });
+    }
+
+    /**
+     * Паралельно готує растри компонентів верхнього рівня: трансформовані зображення шарів
+     * і сплощені растри груп, які {@link LayerImageSource#groupImageFor} може взяти з кешу
+     * без повторного малювання їхніх дочірніх шарів.
+     */
+    private LayerImageSource prepareLayerImages(List<LayerComponent> layers) throws IOException {
+        List<ImageLayer> imageLayers = new ArrayList<>();
+        for (LayerComponent component : layers) {
+            component.collectImageLayers(imageLayers);
+        }
+        for (ImageLayer layer : imageLayers) {
+            Hibernate.initialize(layer.getImage());
+            if (layer.getImage() != null) {
+                Hibernate.initialize(layer.getImage().getRenditions());
+            }
+        }
+
+        Semaphore permits = new Semaphore(maxParallelLayersPerRender);
+        List<Future<BufferedImage>> futures = new ArrayList<>(layers.size());
+        try {
+            for (LayerComponent component : layers) {
+                permits.acquire();
+                try {
+                    futures.add(preparationPool.submit(() -> {
+                        try {
+                            return prepare(component);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+
+            Map<LayerComponent, BufferedImage> prepared = new IdentityHashMap<>();
+            for (int i = 0; i < layers.size(); i++) {
+                BufferedImage image = futures.get(i).get();
+                if (image != null) {
+                    prepared.put(layers.get(i), image);
+                }
+            }
+            return sourceOf(prepared);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Рендеринг колажу перервано", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw unwrap(e);
+        }
+    }
+
+    private BufferedImage prepare(LayerComponent component) throws IOException {
+        if (component instanceof ImageLayer layer) {
+            return layerImageSource.imageFor(layer);
+        }
+        if (component instanceof LayerGroup group && !group.getChildrenBounds().isEmpty()) {
+            return layerImageSource.groupImageFor(group);
+        }
+        return null;
+    }
+
+    private LayerImageSource sourceOf(Map<LayerComponent, BufferedImage> prepared) {
+        return new LayerImageSource() {
+            @Override
+            public BufferedImage imageFor(ImageLayer layer) throws IOException {
+                BufferedImage image = prepared.get(layer);
+                return image != null ? image : layerImageSource.imageFor(layer);
+            }
+
+            @Override
+            public BufferedImage groupImageFor(LayerGroup group) throws IOException {
+                BufferedImage image = prepared.get(group);
+                return image != null ? image : layerImageSource.groupImageFor(group);
+            }
+        };
+    }
+
+    private void renderTiled(BufferedImage canvas, List<LayerComponent> layers, LayerImageSource images)
+            throws IOException {
+        LayerSpatialIndex index = LayerSpatialIndex.build(layers, canvas.getWidth(), canvas.getHeight());
+
+        List<Callable<Void>> tiles = new ArrayList<>();
+        for (int y = 0; y < canvas.getHeight(); y += tileSize) {
+            for (int x = 0; x < canvas.getWidth(); x += tileSize) {
+                Rectangle tile = new Rectangle(x, y,
+                        Math.min(tileSize, canvas.getWidth() - x),
+                        Math.min(tileSize, canvas.getHeight() - y));
+
+                List<LayerComponent> visible = index.componentsIn(tile);
+                if (!visible.isEmpty()) {
+                    tiles.add(() -> renderTile(canvas, tile, visible, images));
+                }
+            }
+        }
+        invokeAll(tiles);
+    }
+
+    /**
+     * Рендеринг у відображене полотно: кожна смуга малюється у звичайне полотно в купі
+     * й копіюється у файл. Смуги незалежні, тому виконуються паралельно на пулі плиток.
+     */
+    private void renderBanded(BufferedImage canvas, List<LayerComponent> layers, LayerImageSource images,
+                              boolean opaque) throws IOException {
+        LayerSpatialIndex index = LayerSpatialIndex.build(layers, canvas.getWidth(), canvas.getHeight());
+        int bandHeight = canvasAllocator.bandHeight();
+
+        List<Callable<Void>> bands = new ArrayList<>();
+        for (int y = 0; y < canvas.getHeight(); y += bandHeight) {
+            Rectangle band = new Rectangle(0, y, canvas.getWidth(), Math.min(bandHeight, canvas.getHeight() - y));
+            List<LayerComponent> visible = index.componentsIn(band);
+            if (visible.isEmpty() && !opaque) {
+                continue;
+            }
+            bands.add(() -> {
+                BufferedImage bandImage = canvasAllocator.allocate(band.width, band.height, opaque);
+                drawRegion(bandImage, band, visible, images);
+                CanvasAllocator.copyBand(canvas, band.y, bandImage, band.height);
+                return null;
+            });
+        }
+        invokeAll(bands);
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> result : tilePool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Рендеринг колажу перервано", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private IOException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof IOException ioException) {
+            return ioException;
+        }
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        throw new RuntimeException("Помилка при рендерингу колажу", e.getCause());
+    }
+
+    private Void renderTile(BufferedImage canvas, Rectangle tile, List<LayerComponent> layers,
+                            LayerImageSource images) throws IOException {
+        BufferedImage tileView = canvas.getSubimage(tile.x, tile.y, tile.width, tile.height);
+        drawRegion(tileView, tile, layers, images);
+        return null;
+    }
+
+    /**
+     * Малює шари, що потрапляють у {@code region} колажу, на {@code target} розміром з цю область.
+     */
+    private void drawRegion(BufferedImage target, Rectangle region, List<LayerComponent> layers,
+                            LayerImageSource images) throws IOException {
+        Graphics2D g2d = createGraphics(target);
+        try {
+            g2d.translate(-region.x, -region.y);
+            for (LayerComponent component : layers) {
+                component.render(g2d, images);
+            }
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    private Graphics2D createGraphics(BufferedImage canvas) {
+        Graphics2D g2d = canvas.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        return g2d;
+    }
+}
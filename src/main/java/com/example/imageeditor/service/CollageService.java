@@ -5,23 +5,33 @@ import com.example.imageeditor.domain.Image;
 import com.example.imageeditor.repository.CollageRepository;
 import com.example.imageeditor.repository.LayerComponentRepository;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
+import org.hibernate.Hibernate;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.Stack;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
@@ -32,13 +42,21 @@ public class CollageService {
     private final CollageRepository collageRepository;
     private final LayerComponentRepository layerComponentRepository;
     private final ImageService imageService;
+    private final CollageRenderer collageRenderer;
+    private final PlatformTransactionManager transactionManager;
+    private final RenderedCollageCache renderedCollageCache;
+    private final RenderMetrics renderMetrics;
+    private final RenderAdmissionController renderAdmissionController;
+    private final UndoHistory undoHistory;
 
-    private final Map<Long, Stack<ImageLayerMemento>> undoStacks = new ConcurrentHashMap<>();
-    private final Map<Long, Stack<ImageLayerMemento>> redoStacks = new ConcurrentHashMap<>();
 
     // DTO для оновлення шару
     @Data
     public static class LayerUpdateDTO {
+        // Для переміщення
+        public Integer positionX;
+        public Integer positionY;
+
         // Для розтягування/стиснення
         public Integer width;
         public Integer height;
@@ -53,13 +71,23 @@ public class CollageService {
         public Integer cropHeight;
     }
 
-    private void saveUndoState(Long collageId, ImageLayer layer) {
-        Stack<ImageLayerMemento> undoStack = undoStacks.computeIfAbsent(collageId, k -> new Stack<>());
-        Stack<ImageLayerMemento> redoStack = redoStacks.computeIfAbsent(collageId, k -> new Stack<>());
-
-        undoStack.push(layer.createMemento());
+    // Операція пакетного оновлення: ті самі поля для конкретного шару
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class LayerBatchUpdateDTO extends LayerUpdateDTO {
+        public Long layerId;
+    }
 
-        redoStack.clear();
+    private void saveUndoState(Long collageId, LayerComponent component) {
+        List<ImageLayerMemento> step = new ArrayList<>();
+        step.add(component.createMemento());
+        if (component instanceof LayerGroup) {
+            // Розмір і кадрування групи змінюють її шари, тож їхній стан входить у той самий крок
+            List<ImageLayer> imageLayers = new ArrayList<>();
+            component.collectImageLayers(imageLayers);
+            imageLayers.forEach(layer -> step.add(layer.createMemento()));
+        }
+        undoHistory.record(collageId, step);
     }
 
     @Transactional
@@ -92,22 +120,85 @@ public class CollageService {
 
         saveUndoState(layer.getCollage().getId(), layer);
 
-        Optional.ofNullable(dto.width).ifPresent(layer::setWidth);
-        Optional.ofNullable(dto.height).ifPresent(layer::setHeight);
-        Optional.ofNullable(dto.rotationAngle).ifPresent(layer::setRotationAngle);
-        Optional.ofNullable(dto.cropX).ifPresent(layer::setCropX);
-        Optional.ofNullable(dto.cropY).ifPresent(layer::setCropY);
-        Optional.ofNullable(dto.cropWidth).ifPresent(layer::setCropWidth);
-        Optional.ofNullable(dto.cropHeight).ifPresent(layer::setCropHeight);
+        layer.applyUpdate(dto);
+        markModified(collage);
 
         return layerComponentRepository.save(layer);
     }
 
+    /**
+     * Застосовує пакет змін до шарів колажу в одній транзакції. Увесь пакет — один крок історії,
+     * тож Undo відкочує його цілком. Повертає змінені шари в порядку першої появи в пакеті.
+     */
+    @Transactional
+    public List<ImageLayer> updateImageLayers(Long collageId, List<LayerBatchUpdateDTO> updates) {
+        if (updates == null || updates.isEmpty()) {
+            throw new IllegalArgumentException("Пакет змін порожній");
+        }
+        Collage collage = findCollageById(collageId);
+        collage.getCurrentState().checkCanEdit(collage);
+
+        Map<Long, ImageLayer> collageLayers = new HashMap<>();
+        for (ImageLayer layer : layerComponentRepository.findAllImageLayersWithImageByCollageId(collageId)) {
+            collageLayers.put(layer.getId(), layer);
+        }
+
+        Map<Long, ImageLayer> changed = new LinkedHashMap<>();
+        List<ImageLayerMemento> undoStep = new ArrayList<>();
+        for (LayerBatchUpdateDTO update : updates) {
+            ImageLayer layer = collageLayers.get(update.layerId);
+            if (layer == null) {
+                throw new IllegalArgumentException("Шар " + update.layerId + " не належить колажу " + collageId);
+            }
+            if (changed.putIfAbsent(layer.getId(), layer) == null) {
+                undoStep.add(layer.createMemento());
+            }
+            layer.applyUpdate(update);
+        }
+
+        undoHistory.record(collageId, undoStep);
+        markModified(collage);
+        return layerComponentRepository.saveAll(changed.values());
+    }
+
     public Collage findCollageById(Long collageId) {
         return collageRepository.findById(collageId)
                 .orElseThrow(() -> new RuntimeException("Колаж не знайдено з id: " + collageId));
     }
 
+    /**
+     * Ревізія збільшується в базі одним UPDATE, а не записом сутності: рядок колажу блокується
+     * до кінця транзакції, тож кожна паралельна правка отримує власний номер ревізії.
+     */
+    private void markModified(Collage collage) {
+        collage.markModified();
+        collageRepository.incrementRevision(collage.getId(), collage.getLastModifiedAt());
+    }
+
+    public long findRevision(Long collageId) {
+        return collageRepository.findRevisionById(collageId)
+                .orElseThrow(() -> new RuntimeException("Колаж не знайдено з id: " + collageId));
+    }
+
+    @Transactional(readOnly = true)
+    public Collage findCollageWithLayers(Long collageId) {
+        Collage collage = collageRepository.findWithLayersById(collageId)
+                .orElseThrow(() -> new RuntimeException("Колаж не знайдено з id: " + collageId));
+        layerComponentRepository.findAllImageLayersWithImageByCollageId(collageId);
+
+        // Шари всередині груп не мають collage_id, тож запит вище їх не охоплює; догружаємо їх тут,
+        // щоб рендеринг у пулі потоків не звертався до сесії
+        List<ImageLayer> imageLayers = new ArrayList<>();
+        collage.getLayers().forEach(component -> component.collectImageLayers(imageLayers));
+        for (ImageLayer layer : imageLayers) {
+            Hibernate.initialize(layer.getImage());
+            if (layer.getImage() != null) {
+                Hibernate.initialize(layer.getImage().getRenditions());
+            }
+        }
+        return collage;
+    }
+
     @Transactional
     public ImageLayer addImageToCollage(Long collageId, MultipartFile file, User user) throws IOException {
         Collage collage = findCollageById(collageId);
@@ -127,6 +218,7 @@ public class CollageService {
                 .mapToInt(LayerComponent::getZIndex)
                 .max().orElse(-1);
         newLayer.setZIndex(maxZIndex + 1);
+        markModified(collage);
 
         return layerComponentRepository.save(newLayer);
     }
@@ -139,9 +231,10 @@ public class CollageService {
         Collage collage = component.getCollage();
         collage.getCurrentState().checkCanEdit(collage);
 
-        if (component instanceof ImageLayer layer) {
-            saveUndoState(layer.getCollage().getId(), layer);
+        if (!"delete".equals(action)) {
+            saveUndoState(collage.getId(), component);
         }
+        markModified(collage);
 
         switch (action) {
             case "rotate_right":
@@ -157,26 +250,15 @@ public class CollageService {
         return layerComponentRepository.save(component);
     }
 
-    @Transactional
     public Image renderAndSaveCollage(Long collageId, User user) throws IOException {
-        Collage collage = findCollageById(collageId);
-
-        BufferedImage canvas = new BufferedImage(
-                collage.getCanvasWidth(),
-                collage.getCanvasHeight(),
-                BufferedImage.TYPE_INT_ARGB
-        );
-        Graphics2D g2d = canvas.createGraphics();
+        Collage collage = loadCollageForRender(collageId);
 
-        for (LayerComponent component : collage.getLayers()) {
-            component.render(g2d, imageService);
+        Image savedImageEntity;
+        try (RenderAdmissionController.Permit permit = renderAdmissionController.admit(collage)) {
+            BufferedImage canvas = collageRenderer.render(collage);
+            savedImageEntity = imageService.saveRenderedCollage(canvas, collage, user);
         }
-
-        g2d.dispose();
-
-        Image savedImageEntity = imageService.saveRenderedCollage(canvas, collage, user);
-        collage.setPreviewFileName(savedImageEntity.getFileName());
-        collageRepository.save(collage);
+        collageRepository.updatePreviewFileName(collageId, savedImageEntity.getFileName());
 
         return savedImageEntity;
     }
@@ -196,54 +278,61 @@ public class CollageService {
                 .max().orElse(-1);
         newComponent.setZIndex(maxZIndex + 1);
         newComponent.setCollage(collage);
+        markModified(collage);
 
         layerComponentRepository.save(newComponent);
     }
 
     @Transactional
-    public ImageLayer undo(Long collageId) {
-        Stack<ImageLayerMemento> undoStack = undoStacks.get(collageId);
-        Stack<ImageLayerMemento> redoStack = redoStacks.get(collageId);
-
-        if (undoStack == null || undoStack.isEmpty()) {
-            return null;
-        }
-
-        ImageLayerMemento mementoToRestore = undoStack.pop();
-
-        ImageLayer layer = layerComponentRepository.findImageLayerById(mementoToRestore.layerId())
-                .orElseThrow(() -> new RuntimeException("Шар не знайдено"));
-
-        if (redoStack == null) redoStack = new Stack<>();
-        redoStack.push(layer.createMemento());
-        redoStacks.put(collageId, redoStack);
-
-        layer.restoreFromMemento(mementoToRestore);
-
-        return layerComponentRepository.save(layer);
+    public LayerComponent undo(Long collageId) {
+        return applyHistory(collageId, UndoStep.Direction.UNDO, UndoStep.Direction.REDO);
     }
 
     @Transactional
-    public ImageLayer redo(Long collageId) {
-        Stack<ImageLayerMemento> undoStack = undoStacks.get(collageId);
-        Stack<ImageLayerMemento> redoStack = redoStacks.get(collageId);
+    public LayerComponent redo(Long collageId) {
+        return applyHistory(collageId, UndoStep.Direction.REDO, UndoStep.Direction.UNDO);
+    }
 
-        if (redoStack == null || redoStack.isEmpty()) {
-            return null;
+    /**
+     * Застосовує найновіший крок, у якому ще є хоч один шар; кроки лише з видаленими шарами відкидаються.
+     */
+    private LayerComponent applyHistory(Long collageId, UndoStep.Direction direction,
+                                        UndoStep.Direction inverseDirection) {
+        Optional<List<ImageLayerMemento>> step;
+        while ((step = undoHistory.pop(collageId, direction)).isPresent()) {
+            LayerComponent restored = applyHistoryStep(collageId, step.get(), inverseDirection);
+            if (restored != null) {
+                return restored;
+            }
         }
+        return null;
+    }
 
-        ImageLayerMemento mementoToRestore = redoStack.pop();
-
-        ImageLayer layer = layerComponentRepository.findImageLayerById(mementoToRestore.layerId())
-                .orElseThrow(() -> new RuntimeException("Шар не знайдено"));
-
-        if (undoStack == null) undoStack = new Stack<>();
-        undoStack.push(layer.createMemento());
-        undoStacks.put(collageId, undoStack);
-
-        layer.restoreFromMemento(mementoToRestore);
+    /**
+     * Відновлює шари кроку історії, а їхній поточний стан кладе у протилежний напрямок.
+     * Знімки шарів, видалених після запису кроку, пропускаються.
+     */
+    private LayerComponent applyHistoryStep(Long collageId, List<ImageLayerMemento> step,
+                                            UndoStep.Direction inverseDirection) {
+        List<ImageLayerMemento> inverse = new ArrayList<>(step.size());
+        List<LayerComponent> restored = new ArrayList<>(step.size());
+        for (ImageLayerMemento mementoToRestore : step) {
+            Optional<LayerComponent> found = layerComponentRepository.findById(mementoToRestore.layerId());
+            if (found.isEmpty()) {
+                continue;
+            }
+            LayerComponent layer = found.get();
+            inverse.add(layer.createMemento());
+            layer.restoreFromMemento(mementoToRestore);
+            restored.add(layer);
+        }
+        if (restored.isEmpty()) {
+            return null;
+        }
+        undoHistory.push(collageId, inverseDirection, inverse);
+        markModified(findCollageById(collageId));
 
-        return layerComponentRepository.save(layer);
+        return layerComponentRepository.saveAll(restored).get(0);
     }
 
     @Transactional
@@ -263,63 +352,85 @@ public class CollageService {
     @Transactional
     public Collage restoreCollage(Long collageId) {
         Collage collage = findCollageById(collageId);
-        undoStacks.remove(collageId);
-        redoStacks.remove(collageId);
+        undoHistory.clear(collageId);
+        renderedCollageCache.invalidate(collageId);
 
         collage.getCurrentState().restore(collage);
+        markModified(collage);
         return collageRepository.save(collage);
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Файл результату закріплено в {@link RenderedCollageCache}, щоб паралельне кодування іншої ревізії
+     * не видалило його під час передачі. Після використання файл звільняють через {@link #releaseCollageResource}.
+     */
     public Resource generateCollageResource(Long collageId, String format) throws IOException {
-        Collage collage = findCollageById(collageId);
+        Collage collage = loadCollageForRender(collageId);
         String normalizedFormat = format.toLowerCase();
 
-        int width = collage.getCanvasWidth();
-        int height = collage.getCanvasHeight();
+        if (!ImageIO.getImageWritersByFormatName(normalizedFormat).hasNext()) {
+            throw new IllegalArgumentException("Формат не підтримується сервером: " + normalizedFormat);
+        }
 
-        BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = canvas.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Path file = renderedCollageCache.getOrCreatePinned(collage.getId(), collage.getRevision(), normalizedFormat,
+                target -> writeCollage(collage, normalizedFormat, target));
+        String filename = exportFileName(collage, normalizedFormat);
 
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        return new FileSystemResource(file) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        };
+    }
 
-        for (LayerComponent component : collage.getLayers()) {
-            component.render(g2d, imageService);
-        }
-        g2d.dispose();
-
-        BufferedImage imageToSave = canvas;
-
-        if (OPAQUE_FORMATS.contains(normalizedFormat)) {
-            BufferedImage rgbCanvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-            Graphics2D rgbG2d = rgbCanvas.createGraphics();
-            rgbG2d.setColor(Color.WHITE);
-            rgbG2d.fillRect(0, 0, width, height);
-            rgbG2d.drawImage(canvas, 0, 0, null);
-            rgbG2d.dispose();
-            imageToSave = rgbCanvas;
-        }
+    public void releaseCollageResource(Resource resource) throws IOException {
+        renderedCollageCache.unpin(resource.getFile().toPath());
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    /**
+     * Кодує колаж прямо у файл, без проміжного буфера в пам'яті. Для непрозорих форматів
+     * полотно одразу рендериться як RGB на білому тлі, без окремої ARGB-копії.
+     */
+    public void writeCollage(Collage collage, String format, Path target) throws IOException {
+        try (RenderAdmissionController.Permit permit = renderAdmissionController.admit(collage)) {
+            encode(collageRenderer.render(collage, isOpaqueFormat(format)), format, target);
+        }
+    }
 
-        boolean success = ImageIO.write(imageToSave, normalizedFormat, baos);
+    public static boolean isOpaqueFormat(String format) {
+        return OPAQUE_FORMATS.contains(format);
+    }
 
-        if (!success) {
-            throw new IllegalArgumentException("Формат не підтримується сервером: " + normalizedFormat);
+    public void encode(BufferedImage image, String format, Path target) throws IOException {
+        long start = System.nanoTime();
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw");
+             ImageOutputStream outputStream = new FileImageOutputStream(file)) {
+            file.setLength(0);
+            if (!ImageIO.write(image, format, outputStream)) {
+                throw new IllegalArgumentException("Формат не підтримується сервером: " + format);
+            }
         }
+        renderMetrics.recordEncode(format, System.nanoTime() - start, Files.size(target));
+    }
 
-        byte[] imageBytes = baos.toByteArray();
-
+    public String exportFileName(Collage collage, String format) {
         String safeName = collage.getName().replaceAll("[^a-zA-Z0-9._-]", "_");
-        String filename = safeName + "." + normalizedFormat;
+        return safeName + "." + format;
+    }
 
-        return new ByteArrayResource(imageBytes) {
-            @Override
-            public String getFilename() {
-                return filename;
-            }
-        };
+    /**
+     * Завантажує колаж з усіма шарами в окремій короткій транзакції, щоб рендеринг
+     * і кодування не тримали з'єднання з базою.
+     */
+    public Collage loadCollageForRender(Long collageId) {
+        return readOnlyTransaction().execute(status -> findCollageWithLayers(collageId));
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
     }
 
 }
\ No newline at end of file
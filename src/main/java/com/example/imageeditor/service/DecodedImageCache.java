@@ -0,0 +1,40 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Image;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Кеш декодованих оригіналів {@link Image}, щоб не читати файл з диска для кожного шару.
+ * Окрім повного оригіналу, кешуються зменшені копії та декодовані фрагменти з проріджуванням.
+ */
+@Component
+public class DecodedImageCache extends ImageLruCache<DecodedImageCache.Key> {
+
+    public record Key(Long imageId, String path, Rectangle region, int subsampling) {
+        public Key {
+            region = region != null ? new Rectangle(region) : null;
+        }
+
+        public static Key of(Image image) {
+            return new Key(image.getId(), image.getPath(), null, 1);
+        }
+
+    }
+
+    public DecodedImageCache(@Value("${image.cache.decoded.max-bytes:268435456}") long maxWeightBytes) {
+        super(maxWeightBytes);
+    }
+
+    public BufferedImage get(Image image, Loader loader) throws IOException {
+        return get(Key.of(image), loader);
+    }
+
+    public void invalidate(Long imageId) {
+        invalidateIf(key -> key.imageId().equals(imageId));
+    }
+}
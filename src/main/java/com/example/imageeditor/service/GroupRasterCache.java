@@ -0,0 +1,71 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.domain.LayerGroup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * Кеш сплощених растрів груп. Ключ обчислюється з вмісту всього піддерева: розміщення й
+ * {@link TransformedLayerCache.Key} кожного шару та власне перетворення вкладених груп.
+ * Тому зміна будь-якого нащадка змінює ключі всіх груп над ним, а незмінені гілки,
+ * клони груп і шаблони з тим самим вмістом отримують уже намальований растер.
+ */
+@Component
+public class GroupRasterCache extends ImageLruCache<GroupRasterCache.Key> {
+
+    public record Key(String fingerprint, Set<Long> imageIds) {
+        public static Key of(LayerGroup group) {
+            StringBuilder content = new StringBuilder();
+            Set<Long> imageIds = new HashSet<>();
+            appendChildren(group, content, imageIds);
+            return new Key(digest(content.toString()), Set.copyOf(imageIds));
+        }
+
+        private static void appendChildren(LayerGroup group, StringBuilder content, Set<Long> imageIds) {
+            for (LayerComponent child : group.getChildren()) {
+                content.append(child.getPositionX()).append(',').append(child.getPositionY());
+                if (child instanceof ImageLayer layer) {
+                    imageIds.add(layer.getImage().getId());
+                    content.append('L').append(TransformedLayerCache.Key.of(layer)).append(';');
+                } else if (child instanceof LayerGroup nested) {
+                    content.append('G').append(nested.getRotationAngle()).append('(');
+                    appendChildren(nested, content, imageIds);
+                    content.append(')');
+                }
+            }
+        }
+
+        private static String digest(String content) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256")
+                        .digest(content.getBytes(StandardCharsets.UTF_8));
+                return HexFormat.of().formatHex(digest, 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    public GroupRasterCache(@Value("${image.cache.group.max-bytes:134217728}") long maxWeightBytes) {
+        super(maxWeightBytes);
+    }
+
+    public BufferedImage get(LayerGroup group, Loader loader) throws IOException {
+        return get(Key.of(group), loader);
+    }
+
+    public void invalidate(Long imageId) {
+        invalidateIf(key -> key.imageIds().contains(imageId));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.imageeditor.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Публікує статистику кешів зображень: влучання, промахи, витіснення, кількість записів і зайняті байти.
+ */
+@Component
+@RequiredArgsConstructor
+public class ImageCacheMetrics implements MeterBinder {
+
+    private final DecodedImageCache decodedImageCache;
+    private final TransformedLayerCache transformedLayerCache;
+    private final GroupRasterCache groupRasterCache;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, "decoded", decodedImageCache);
+        bind(registry, "transformed", transformedLayerCache);
+        bind(registry, "group", groupRasterCache);
+    }
+
+    private void bind(MeterRegistry registry, String name, ImageLruCache<?> cache) {
+        FunctionCounter.builder("imageeditor.cache.gets", cache, c -> c.stats().hits())
+                .tag("cache", name).tag("result", "hit").register(registry);
+        FunctionCounter.builder("imageeditor.cache.gets", cache, c -> c.stats().misses())
+                .tag("cache", name).tag("result", "miss").register(registry);
+        FunctionCounter.builder("imageeditor.cache.evictions", cache, c -> c.stats().evictions())
+                .tag("cache", name).register(registry);
+        Gauge.builder("imageeditor.cache.entries", cache, c -> c.stats().entries())
+                .tag("cache", name).register(registry);
+        Gauge.builder("imageeditor.cache.weight", cache, c -> c.stats().weightBytes())
+                .tag("cache", name).baseUnit("bytes").register(registry);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.imageeditor.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Розміри й формат зображення, прочитані із заголовка файлу без декодування пікселів.
+ * Формат — назва формату з {@link ImageReader#getFormatName()} у нижньому регістрі.
+ */
+public record ImageDimensions(int width, int height, String format) {
+
+    public static ImageDimensions probe(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Файл збережено, але він не є валідним зображенням (jpg, png, gif).");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new ImageDimensions(reader.getWidth(0), reader.getHeight(0),
+                        reader.getFormatName().toLowerCase(Locale.ROOT));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.imageeditor.service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * LRU-кеш {@link BufferedImage}, обмежений сумарним розміром піксельних буферів,
+ * а не кількістю записів. Закешовані зображення спільні, тому їх не можна змінювати.
+ */
+public abstract class ImageLruCache<K> {
+
+    public record Stats(long hits, long misses, long evictions, int entries, long weightBytes, long maxWeightBytes) {
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        BufferedImage load() throws IOException;
+    }
+
+    private final long maxWeightBytes;
+    private final Map<K, BufferedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weightBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    protected ImageLruCache(long maxWeightBytes) {
+        this.maxWeightBytes = maxWeightBytes;
+    }
+
+    public BufferedImage get(K key, Loader loader) throws IOException {
+        synchronized (this) {
+            BufferedImage cached = entries.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        BufferedImage loaded = loader.load();
+        if (loaded != null) {
+            put(key, loaded);
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        Iterator<Map.Entry<K, BufferedImage>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, BufferedImage> entry = it.next();
+            if (predicate.test(entry.getKey())) {
+                weightBytes -= weightOf(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weightBytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), weightBytes, maxWeightBytes);
+    }
+
+    private synchronized void put(K key, BufferedImage image) {
+        long weight = weightOf(image);
+        if (weight > maxWeightBytes) {
+            return;
+        }
+
+        BufferedImage previous = entries.put(key, image);
+        if (previous != null) {
+            weightBytes -= weightOf(previous);
+        }
+        weightBytes += weight;
+
+        Iterator<Map.Entry<K, BufferedImage>> it = entries.entrySet().iterator();
+        while (weightBytes > maxWeightBytes && it.hasNext()) {
+            Map.Entry<K, BufferedImage> eldest = it.next();
+            weightBytes -= weightOf(eldest.getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    static long weightOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long bytesPerElement = DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        return (long) buffer.getSize() * buffer.getNumBanks() * bytesPerElement;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageRendition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Створює зменшені копії завантаженого зображення поруч з оригіналом.
+ * Джерело декодується один раз із проріджуванням під найбільшу копію, а менші копії
+ * отримуються з попередньої. Коефіцієнт проріджування округлюється вгору, тож повний растер
+ * не декодується ніколи; найбільша копія тоді обмежується розміром проріджаного джерела
+ * і записується з фактичною довжиною сторони.
+ */
+@Component
+public class ImageRenditionGenerator {
+
+    private static final double MIN_EDGE_STEP = 1.25;
+
+    private final int[] longEdges;
+
+    public ImageRenditionGenerator(@Value("${image.renditions.long-edges:256,512,1024,2048}") int[] longEdges) {
+        this.longEdges = Arrays.stream(longEdges).sorted().toArray();
+    }
+
+    public List<ImageRendition> generate(Path original, int width, int height) throws IOException {
+        int originalLongEdge = Math.max(width, height);
+        int[] edges = Arrays.stream(longEdges).filter(edge -> edge < originalLongEdge).toArray();
+        if (edges.length == 0) {
+            return List.of();
+        }
+
+        int largestEdge = edges[edges.length - 1];
+        BufferedImage source = readSubsampled(original, (originalLongEdge + largestEdge - 1) / largestEdge);
+        int sourceLongEdge = Math.max(source.getWidth(), source.getHeight());
+        boolean opaque = !source.getColorModel().hasAlpha();
+        String format = opaque ? "jpg" : "png";
+        String baseName = stripExtension(original.getFileName().toString());
+
+        List<ImageRendition> renditions = new ArrayList<>();
+        try {
+            for (int i = edges.length - 1; i >= 0; i--) {
+                int edge = Math.min(edges[i], sourceLongEdge);
+                if (i > 0 && edge < edges[i - 1] * MIN_EDGE_STEP) {
+                    // Після проріджування копія майже не відрізнялася б від наступної меншої
+                    continue;
+                }
+                double scale = (double) edge / originalLongEdge;
+                int targetWidth = Math.min(source.getWidth(), Math.max(1, (int) Math.round(width * scale)));
+                int targetHeight = Math.min(source.getHeight(), Math.max(1, (int) Math.round(height * scale)));
+
+                source = downscale(source, targetWidth, targetHeight, opaque);
+
+                String fileName = baseName + "_" + edge + "." + format;
+                Path destination = original.resolveSibling(fileName);
+                MessageDigest digest = ContentHash.newDigest();
+                try (OutputStream output = new DigestOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(destination)), digest)) {
+                    if (!ImageIO.write(source, format, output)) {
+                        throw new IOException("Немає кодувальника для формату " + format);
+                    }
+                }
+                renditions.add(0, new ImageRendition(edge, fileName, targetWidth, targetHeight,
+                        ContentHash.hex(digest)));
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(original, renditions);
+            throw e;
+        }
+        return renditions;
+    }
+
+    public void delete(Path original, List<ImageRendition> renditions) {
+        for (ImageRendition rendition : renditions) {
+            try {
+                Files.deleteIfExists(original.resolveSibling(rendition.getFileName()));
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private BufferedImage readSubsampled(Path file, int subsampling) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Непідтримуваний формат зображення: " + file.getFileName());
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int factor = Math.max(1, subsampling);
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage downscale(BufferedImage source, int targetWidth, int targetHeight, boolean opaque) {
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D g2d = step.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(current, 0, 0, width, height, null);
+            g2d.dispose();
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+
+        return current;
+    }
+
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
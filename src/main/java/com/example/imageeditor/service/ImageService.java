@@ -3,29 +3,43 @@ package com.example.imageeditor.service;
 import com.example.imageeditor.domain.Collage;
 import com.example.imageeditor.domain.Image;
 import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.ImageRendition;
+import com.example.imageeditor.domain.LayerGroup;
 import com.example.imageeditor.domain.User;
 import com.example.imageeditor.repository.CollageRepository;
 import com.example.imageeditor.repository.ImageRepository;
 import com.example.imageeditor.repository.LayerComponentRepository;
-import org.springframework.core.io.Resource;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -34,7 +48,7 @@ import java.awt.RenderingHints;
 
 @Service
 @RequiredArgsConstructor
-public class ImageService {
+public class ImageService implements LayerImageSource {
     private final Path rootLocation = Paths.get("uploads");
 
     private final ImageRepository imageRepository;
@@ -43,36 +57,72 @@ public class ImageService {
 
     private final CollageRepository collageRepository;
 
+    private final DecodedImageCache decodedImageCache;
+
+    private final TransformedLayerCache transformedLayerCache;
+
+    private final GroupRasterCache groupRasterCache;
+
+    private final ImageRenditionGenerator renditionGenerator;
+
+    private final RenderMetrics renderMetrics;
+
+    private final UndoHistory undoHistory;
+
+    private final RenderedCollageCache renderedCollageCache;
+
+    public record StoredFile(Path path, String format, String contentHash) {
+    }
+
+    /**
+     * Шукає збережений файл (оригінал, зменшену копію або результат колажу) за його ім'ям.
+     * Файли, про які немає запису в базі, не віддаються.
+     */
+    public Optional<StoredFile> findStoredFile(String fileName) {
+        Optional<StoredFile> original = imageRepository.findByFileName(fileName)
+                .map(image -> new StoredFile(Paths.get(image.getPath()), image.getFileFormat(), image.getContentHash()));
+        if (original.isPresent()) {
+            return original;
+        }
+        return imageRepository.findRenditionByFileName(fileName)
+                .map(rendition -> new StoredFile(
+                        rootLocation.resolve(rendition.getFileName()).normalize().toAbsolutePath(),
+                        getFileExtension(rendition.getFileName()),
+                        rendition.getContentHash()));
+    }
+
     public List<Image> findImagesByUser(User user) {
         return imageRepository.findByUserAndRenderedResultFalse(user);
     }
 
     public Image storeImage(MultipartFile file, User owner) {
-        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
+        long start = System.nanoTime();
+        String format = null;
 
         try {
             if (file.isEmpty()) {
                 throw new RuntimeException("Неможливо зберегти пустий файл");
             }
+            if (file.getOriginalFilename() == null) {
+                throw new RuntimeException("Не вказано ім'я файлу");
+            }
+            String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
 
             String fileExtension = getFileExtension(originalFilename);
             String uniqueFilename = UUID.randomUUID() + "." + fileExtension;
             Path destinationFile = this.rootLocation.resolve(uniqueFilename).normalize().toAbsolutePath();
 
-            try (InputStream inputStream = file.getInputStream()) {
+            MessageDigest digest = ContentHash.newDigest();
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
                 Files.copy(inputStream, destinationFile, StandardCopyOption.REPLACE_EXISTING);
             }
 
             int width, height;
             try {
-                BufferedImage bufferedImage = ImageIO.read(destinationFile.toFile());
-
-                if (bufferedImage == null) {
-                    Files.delete(destinationFile);
-                    throw new IOException("Файл збережено, але він не є валідним зображенням (jpg, png, gif).");
-                }
-                width = bufferedImage.getWidth();
-                height = bufferedImage.getHeight();
+                ImageDimensions dimensions = ImageDimensions.probe(destinationFile);
+                width = dimensions.width();
+                height = dimensions.height();
+                format = dimensions.format();
             } catch (IOException e) {
                 try { Files.deleteIfExists(destinationFile); } catch (IOException ignored) {}
                 throw new RuntimeException("Не вдалося прочитати розміри збереженого файлу.", e);
@@ -82,16 +132,28 @@ public class ImageService {
             image.setFileName(uniqueFilename);
             image.setPath(destinationFile.toString());
             image.setFileFormat(fileExtension);
+            image.setContentHash(ContentHash.hex(digest));
             image.setOwner(owner);
             image.setRenderedResult(false);
 
             image.setWidth(width);
             image.setHeight(height);
 
-            return imageRepository.save(image);
+            List<ImageRendition> renditions = List.of();
+            try {
+                renditions = renditionGenerator.generate(destinationFile, width, height);
+                image.setRenditions(new ArrayList<>(renditions));
+                return imageRepository.save(image);
+            } catch (IOException | RuntimeException e) {
+                renditionGenerator.delete(destinationFile, renditions);
+                try { Files.deleteIfExists(destinationFile); } catch (IOException ignored) {}
+                throw e;
+            }
 
         } catch (Exception e) {
             throw new RuntimeException("Помилка при зберіганні файлу", e);
+        } finally {
+            renderMetrics.recordStore(format, System.nanoTime() - start);
         }
     }
 
@@ -128,11 +190,19 @@ public class ImageService {
 
         if (!collagesToDelete.isEmpty()) {
             collageRepository.deleteAll(collagesToDelete);
+            collagesToDelete.forEach(collage -> {
+                undoHistory.clear(collage.getId());
+                renderedCollageCache.invalidate(collage.getId());
+            });
         }
 
         try {
             Path filePath = Paths.get(image.getPath());
             Files.deleteIfExists(filePath);
+            renditionGenerator.delete(filePath, image.getRenditions());
+            decodedImageCache.invalidate(image.getId());
+            transformedLayerCache.invalidate(image.getId());
+            groupRasterCache.invalidate(image.getId());
 
             imageRepository.delete(image);
         } catch (Exception e) {
@@ -140,37 +210,46 @@ public class ImageService {
         }
     }
 
-    public Resource getTransformedLayerAsResource(Long layerId) throws IOException {
-        BufferedImage transformedImage = applyTransformationsToLayer(layerId);
-
-        String tempFileName = "temp_" + UUID.randomUUID() + ".png";
-        Path tempFilePath = this.rootLocation.resolve(tempFileName);
-        File tempFile = tempFilePath.toFile();
-
-        ImageIO.write(transformedImage, "png", tempFile);
+    public ImageLayer findImageLayerById(Long layerId) {
+        return layerComponentRepository.findImageLayerById(layerId)
+                .orElseThrow(() -> new RuntimeException("ImageLayer (Leaf) не знайдено з ID: " + layerId));
+    }
 
-        Resource resource = new UrlResource(tempFilePath.toUri());
-        if (resource.exists() || resource.isReadable()) {
-            return resource;
-        } else {
-            throw new RuntimeException("Неможливо прочитати змінений файл");
+    public void writePng(BufferedImage image, OutputStream outputStream) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(outputStream)) {
+            writer.setOutput(ios);
+            writer.write(image);
+        } finally {
+            writer.dispose();
         }
     }
 
     public BufferedImage applyTransformationsToLayer(Long layerId) throws IOException {
-        ImageLayer layer = layerComponentRepository.findImageLayerById(layerId)
-                .orElseThrow(() -> new RuntimeException("ImageLayer (Leaf) не знайдено з ID: " + layerId));
+        return applyTransformationsToLayer(findImageLayerById(layerId));
+    }
+
+    public BufferedImage applyTransformationsToLayer(ImageLayer layer) throws IOException {
+        return transformedLayerCache.get(layer, () -> transformLayer(layer));
+    }
 
-        Image originalImage = layer.getImage();
-        File originalFile = new File(originalImage.getPath());
+    @Override
+    public BufferedImage imageFor(ImageLayer layer) throws IOException {
+        return applyTransformationsToLayer(layer);
+    }
 
-        BufferedImage currentImage = ImageIO.read(originalFile);
+    @Override
+    public BufferedImage groupImageFor(LayerGroup group) throws IOException {
+        return groupRasterCache.get(group, () -> renderMetrics.timeTransform(group, () -> group.flatten(this)));
+    }
 
+    private BufferedImage transformLayer(ImageLayer layer) throws IOException {
+        Rectangle cropRegion = null;
         if (layer.getCropX() != null && layer.getCropY() != null &&
                 layer.getCropWidth() != null && layer.getCropHeight() != null &&
                 layer.getCropWidth() > 0 && layer.getCropHeight() > 0) {
 
-            currentImage = currentImage.getSubimage(
+            cropRegion = new Rectangle(
                     layer.getCropX(),
                     layer.getCropY(),
                     layer.getCropWidth(),
@@ -178,35 +257,86 @@ public class ImageService {
             );
         }
 
-        BufferedImage scaledImage = new BufferedImage(layer.getWidth(),
-                layer.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = scaledImage.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(currentImage, 0, 0, layer.getWidth(), layer.getHeight(), null);
-        g2d.dispose();
-        currentImage = scaledImage;
-
-        if (layer.getRotationAngle() != 0.0) {
-            double rads = Math.toRadians(layer.getRotationAngle());
-            double sin = Math.abs(Math.sin(rads));
-            double cos = Math.abs(Math.cos(rads));
-            int w = currentImage.getWidth();
-            int h = currentImage.getHeight();
-            int newWidth = (int) Math.floor(w * cos + h * sin);
-            int newHeight = (int) Math.floor(h * cos + w * sin);
-
-            BufferedImage rotatedImage = new BufferedImage(newWidth, newHeight,
-                    BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = rotatedImage.createGraphics();
-            g2.translate((newWidth - w) / 2.0, (newHeight - h) / 2.0);
-            g2.rotate(rads, w / 2.0, h / 2.0);
-            g2.drawRenderedImage(currentImage, null);
-            g2.dispose();
-            currentImage = rotatedImage;
+        BufferedImage source = decodeSource(layer.getImage(), cropRegion,
+                layer.getWidth(), layer.getHeight());
+
+        return renderMetrics.timeTransform(layer, () -> LayerTransforms.scaleAndRotate(source,
+                layer.getWidth(), layer.getHeight(), layer.getRotationAngle(), layer.getBounds()));
+    }
+
+    /**
+     * Декодує найменшу копію зображення, якої достатньо для цільового розміру, лише в області
+     * кадрування і з проріджуванням. Результат не менший за цільовий розмір,
+     * тож подальше масштабування лише зменшує зображення.
+     */
+    private BufferedImage decodeSource(Image image, Rectangle region, int targetWidth, int targetHeight)
+            throws IOException {
+        int sourceWidth = region != null ? region.width : image.getWidth();
+        int sourceHeight = region != null ? region.height : image.getHeight();
+        double requiredScale = Math.max(
+                (double) targetWidth / Math.max(1, sourceWidth),
+                (double) targetHeight / Math.max(1, sourceHeight));
+
+        String path = image.getPath();
+        Optional<ImageRendition> rendition = image.renditionForScale(requiredScale);
+        if (rendition.isPresent()) {
+            double scaleX = (double) rendition.get().getWidth() / image.getWidth();
+            double scaleY = (double) rendition.get().getHeight() / image.getHeight();
+            path = Paths.get(image.getPath()).resolveSibling(rendition.get().getFileName()).toString();
+            if (region != null) {
+                region = scaleRegion(region, scaleX, scaleY, rendition.get());
+            }
+            sourceWidth = region != null ? region.width : rendition.get().getWidth();
+            sourceHeight = region != null ? region.height : rendition.get().getHeight();
         }
 
-        return currentImage;
+        int subsampling = Math.max(1, Math.min(
+                sourceWidth / Math.max(1, targetWidth),
+                sourceHeight / Math.max(1, targetHeight)));
+
+        File file = new File(path);
+        Rectangle sourceRegion = region;
+        DecodedImageCache.Key key = new DecodedImageCache.Key(image.getId(), path, sourceRegion, subsampling);
+        return decodedImageCache.get(key, () -> renderMetrics.timeDecode(getFileExtension(file.getName()),
+                () -> readImage(file, sourceRegion, subsampling)));
+    }
+
+    private Rectangle scaleRegion(Rectangle region, double scaleX, double scaleY, ImageRendition rendition) {
+        int x0 = (int) Math.floor(region.x * scaleX);
+        int y0 = (int) Math.floor(region.y * scaleY);
+        int x1 = Math.min(rendition.getWidth(), (int) Math.ceil((region.x + region.width) * scaleX));
+        int y1 = Math.min(rendition.getHeight(), (int) Math.ceil((region.y + region.height) * scaleY));
+        return new Rectangle(x0, y0, Math.max(1, x1 - x0), Math.max(1, y1 - y0));
+    }
+
+    private BufferedImage readImage(File file, Rectangle region, int subsampling) throws IOException {
+        if (region == null && subsampling == 1) {
+            return ImageIO.read(file);
+        }
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Непідтримуваний формат зображення: " + file.getName());
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    Rectangle imageBounds = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+                    if (!imageBounds.contains(region)) {
+                        throw new IllegalArgumentException("Область кадрування виходить за межі зображення");
+                    }
+                    param.setSourceRegion(region);
+                }
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
     }
 
     @Transactional
@@ -215,16 +345,24 @@ public class ImageService {
         String uniqueFilename = "collage-" + UUID.randomUUID() + "." + fileExtension;
         Path destinationFile = this.rootLocation.resolve(uniqueFilename).normalize().toAbsolutePath();
 
-        try {
-            ImageIO.write(canvas, fileExtension, destinationFile.toFile());
+        MessageDigest digest = ContentHash.newDigest();
+        long start = System.nanoTime();
+        try (OutputStream outputStream = new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(destinationFile)), digest)) {
+            ImageIO.write(canvas, fileExtension, outputStream);
         } catch (IOException e) {
             throw new RuntimeException("Помилка при зберігання колажу", e);
         }
+        try {
+            renderMetrics.recordEncode(fileExtension, System.nanoTime() - start, Files.size(destinationFile));
+        } catch (IOException ignored) {
+        }
 
         Image finalImage = new Image();
         finalImage.setFileName(uniqueFilename);
         finalImage.setPath(destinationFile.toString());
         finalImage.setFileFormat(fileExtension);
+        finalImage.setContentHash(ContentHash.hex(digest));
         finalImage.setOwner(user);
         finalImage.setTitle("Render: " + collage.getName());
         finalImage.setRenderedResult(true);
@@ -232,6 +370,11 @@ public class ImageService {
         finalImage.setHeight(canvas.getHeight());
         finalImage.setTitle("Результат колажу: " + collage.getName());
 
-        return imageRepository.save(finalImage);
+        try {
+            return imageRepository.save(finalImage);
+        } catch (RuntimeException e) {
+            try { Files.deleteIfExists(destinationFile); } catch (IOException ignored) {}
+            throw e;
+        }
     }
 }
\ No newline at end of file
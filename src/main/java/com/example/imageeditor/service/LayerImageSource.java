@@ -0,0 +1,20 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerGroup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+@FunctionalInterface
+public interface LayerImageSource {
+    BufferedImage imageFor(ImageLayer layer) throws IOException;
+
+    /**
+     * Сплощений растер групи з початком у {@link LayerGroup#getChildrenBounds()}.
+     * За замовчуванням малюється щоразу заново; {@link ImageService} бере його з {@link GroupRasterCache}.
+     */
+    default BufferedImage groupImageFor(LayerGroup group) throws IOException {
+        return group.flatten(this);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.ImageLayer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Просторові індекси завантажених колажів. Індекс прив'язаний до ревізії колажу, тож будь-яке
+ * редагування шарів, пакетне оновлення чи undo/redo робить його застарілим, і наступний запит
+ * будує новий. Запит до збереженого індексу читає з бази лише ревізію; шари завантажуються,
+ * тільки коли індекс треба перебудувати. Кількість збережених індексів обмежена,
+ * найдавніше використані витісняються.
+ */
+@Service
+public class LayerIndexService {
+
+    private record Entry(long revision, LayerSpatialIndex index) {
+    }
+
+    private final CollageService collageService;
+    private final Map<Long, Entry> entries;
+
+    public LayerIndexService(CollageService collageService,
+                             @Value("${collage.layer-index.max-collages:256}") int maxCollages) {
+        this.collageService = collageService;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxCollages;
+            }
+        };
+    }
+
+    public Optional<ImageLayer> hitTest(Long collageId, int x, int y) {
+        return indexFor(collageId).hitTest(x, y);
+    }
+
+    public List<ImageLayer> layersIn(Long collageId, Rectangle region) {
+        return indexFor(collageId).layersIn(region);
+    }
+
+    private LayerSpatialIndex indexFor(Long collageId) {
+        long revision = collageService.findRevision(collageId);
+        synchronized (entries) {
+            Entry entry = entries.get(collageId);
+            if (entry != null && entry.revision() == revision) {
+                return entry.index();
+            }
+        }
+        return indexFor(collageService.loadCollageForRender(collageId));
+    }
+
+    public LayerSpatialIndex indexFor(Collage collage) {
+        synchronized (entries) {
+            Entry entry = entries.get(collage.getId());
+            if (entry != null && entry.revision() == collage.getRevision()) {
+                return entry.index();
+            }
+        }
+
+        LayerSpatialIndex index = LayerSpatialIndex.build(collage.getLayers(),
+                collage.getCanvasWidth(), collage.getCanvasHeight());
+        synchronized (entries) {
+            entries.put(collage.getId(), new Entry(collage.getRevision(), index));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.domain.LayerGroup;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+
+/**
+ * Рівномірна сітка над шарами колажу. Кожен {@link ImageLayer}, зокрема всередині груп, записується
+ * в клітинки, які перетинають його межі після повороту й перетворень усіх груп над ним; шари поза полотном
+ * потрапляють у крайні клітинки.
+ * Запит області перебирає лише її клітинки, тож його вартість залежить від кількості шарів поблизу,
+ * а не від розміру колажу. Індекс незмінний: після редагування колажу будується новий.
+ */
+public final class LayerSpatialIndex {
+
+    private static final int MIN_CELL_SIZE = 64;
+
+    private final List<LayerComponent> components;
+    private final ImageLayer[] leaves;
+    private final int[] leafComponent;
+    private final AffineTransform[] leafTransforms;
+    private final Rectangle[] leafBounds;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[][] cells;
+
+    private LayerSpatialIndex(List<LayerComponent> components, List<ImageLayer> leaves, List<Integer> leafComponent,
+                              List<AffineTransform> leafTransforms, int canvasWidth, int canvasHeight) {
+        this.components = components;
+        this.leaves = leaves.toArray(new ImageLayer[0]);
+        this.leafComponent = leafComponent.stream().mapToInt(Integer::intValue).toArray();
+        this.leafTransforms = leafTransforms.toArray(new AffineTransform[0]);
+        this.leafBounds = new Rectangle[this.leaves.length];
+
+        long area = Math.max(1L, (long) canvasWidth * canvasHeight);
+        this.cellSize = (int) Math.max(MIN_CELL_SIZE, Math.sqrt((double) area / Math.max(1, this.leaves.length)));
+        this.columns = Math.max(1, (canvasWidth + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (canvasHeight + cellSize - 1) / cellSize);
+
+        int[] counts = new int[columns * rows];
+        for (int i = 0; i < this.leaves.length; i++) {
+            Rectangle bounds = this.leaves[i].getBounds();
+            leafBounds[i] = this.leafTransforms[i] == null
+                    ? bounds
+                    : this.leafTransforms[i].createTransformedShape(bounds).getBounds();
+            forEachCell(leafBounds[i], cell -> counts[cell]++);
+        }
+        this.cells = new int[counts.length][];
+        for (int cell = 0; cell < counts.length; cell++) {
+            cells[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int i = 0; i < this.leaves.length; i++) {
+            int leaf = i;
+            forEachCell(leafBounds[i], cell -> cells[cell][counts[cell]++] = leaf);
+        }
+    }
+
+    /**
+     * @param components компоненти верхнього рівня в порядку малювання, як у {@code Collage.getLayers()}
+     */
+    public static LayerSpatialIndex build(List<LayerComponent> components, int canvasWidth, int canvasHeight) {
+        List<ImageLayer> leaves = new ArrayList<>();
+        List<Integer> leafComponent = new ArrayList<>();
+        List<AffineTransform> leafTransforms = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) {
+            int before = leaves.size();
+            collectLeaves(components.get(i), null, leaves, leafTransforms);
+            for (int j = before; j < leaves.size(); j++) {
+                leafComponent.add(i);
+            }
+        }
+        return new LayerSpatialIndex(components, leaves, leafComponent, leafTransforms, canvasWidth, canvasHeight);
+    }
+
+    /**
+     * Збирає шари піддерева разом із накопиченим перетворенням груп над ними; {@code null} — без перетворення.
+     */
+    private static void collectLeaves(LayerComponent component, AffineTransform transform,
+                                      List<ImageLayer> leaves, List<AffineTransform> leafTransforms) {
+        if (component instanceof ImageLayer layer) {
+            leaves.add(layer);
+            leafTransforms.add(transform);
+        } else if (component instanceof LayerGroup group) {
+            AffineTransform childTransform = transform;
+            if (group.hasTransform()) {
+                childTransform = transform == null ? new AffineTransform() : new AffineTransform(transform);
+                childTransform.concatenate(group.toParentTransform());
+            }
+            for (LayerComponent child : group.getChildren()) {
+                collectLeaves(child, childTransform, leaves, leafTransforms);
+            }
+        }
+    }
+
+    /**
+     * Компоненти верхнього рівня, чиї шари перетинають {@code region}, у порядку малювання.
+     */
+    public List<LayerComponent> componentsIn(Rectangle region) {
+        BitSet found = new BitSet(components.size());
+        forEachCandidate(region, leaf -> found.set(leafComponent[leaf]));
+
+        List<LayerComponent> result = new ArrayList<>(found.cardinality());
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            result.add(components.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Шари, що перетинають {@code region}, у порядку малювання.
+     */
+    public List<ImageLayer> layersIn(Rectangle region) {
+        BitSet found = new BitSet(leaves.length);
+        forEachCandidate(region, found::set);
+
+        List<ImageLayer> result = new ArrayList<>(found.cardinality());
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            result.add(leaves[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Найвищий шар, що містить точку з урахуванням повороту, а не лише його обмежувального прямокутника.
+     */
+    public Optional<ImageLayer> hitTest(int x, int y) {
+        int[] candidates = cells[cellOf(x, y)];
+        ImageLayer hit = null;
+        int hitIndex = -1;
+        for (int leaf : candidates) {
+            if (leaf > hitIndex && leafBounds[leaf].contains(x, y) && contains(leaf, x, y)) {
+                hit = leaves[leaf];
+                hitIndex = leaf;
+            }
+        }
+        return Optional.ofNullable(hit);
+    }
+
+    public int size() {
+        return leaves.length;
+    }
+
+    private void forEachCandidate(Rectangle region, IntConsumer consumer) {
+        forEachCell(region, cell -> {
+            for (int leaf : cells[cell]) {
+                if (leafBounds[leaf].intersects(region)) {
+                    consumer.accept(leaf);
+                }
+            }
+        });
+    }
+
+    private void forEachCell(Rectangle bounds, IntConsumer consumer) {
+        if (bounds.isEmpty()) {
+            return;
+        }
+        int firstColumn = clamp(Math.floorDiv(bounds.x, cellSize), columns);
+        int lastColumn = clamp(Math.floorDiv(bounds.x + bounds.width - 1, cellSize), columns);
+        int firstRow = clamp(Math.floorDiv(bounds.y, cellSize), rows);
+        int lastRow = clamp(Math.floorDiv(bounds.y + bounds.height - 1, cellSize), rows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                consumer.accept(row * columns + column);
+            }
+        }
+    }
+
+    private int cellOf(int x, int y) {
+        return clamp(Math.floorDiv(y, cellSize), rows) * columns + clamp(Math.floorDiv(x, cellSize), columns);
+    }
+
+    private static int clamp(int index, int count) {
+        return Math.min(Math.max(index, 0), count - 1);
+    }
+
+    /**
+     * Переводить центр пікселя в координати групи, що містить шар, і перевіряє попадання в сам шар.
+     */
+    private boolean contains(int leaf, int x, int y) {
+        ImageLayer layer = leaves[leaf];
+        if (leafTransforms[leaf] == null) {
+            return containsRotated(layer, leafBounds[leaf], x + 0.5, y + 0.5);
+        }
+        Point2D local;
+        try {
+            local = leafTransforms[leaf].inverseTransform(new Point2D.Double(x + 0.5, y + 0.5), null);
+        } catch (NoninvertibleTransformException e) {
+            return false;
+        }
+        Rectangle bounds = layer.getBounds();
+        return bounds.contains(local) && containsRotated(layer, bounds, local.getX(), local.getY());
+    }
+
+    /**
+     * Шар повертається навколо центру своїх меж, тож точку повертаємо у зворотний бік
+     * і перевіряємо, чи потрапляє вона в неповернутий прямокутник шару.
+     */
+    private static boolean containsRotated(ImageLayer layer, Rectangle bounds, double x, double y) {
+        if (layer.getRotationAngle() % 90.0 == 0.0) {
+            return true;
+        }
+        double rads = Math.toRadians(-layer.getRotationAngle());
+        double dx = x - bounds.getCenterX();
+        double dy = y - bounds.getCenterY();
+        double localX = dx * Math.cos(rads) - dy * Math.sin(rads);
+        double localY = dx * Math.sin(rads) + dy * Math.cos(rads);
+        return Math.abs(localX) <= layer.getWidth() / 2.0 && Math.abs(localY) <= layer.getHeight() / 2.0;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.imageeditor.service;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Геометричні перетворення шару. Масштабування й поворот складаються в одне {@link AffineTransform},
+ * тож джерело перевибирається один раз прямо в полотно розміром з {@link com.example.imageeditor.domain.ImageLayer#getBounds()}.
+ * Повороти на 90/180/270 градусів виконуються без інтерполяції — перестановкою пікселів у {@link DataBufferInt}.
+ */
+public final class LayerTransforms {
+
+    private LayerTransforms() {
+    }
+
+    /**
+     * @param source вже обрізане джерело довільного розміру
+     * @param bounds межі шару після повороту; визначають розмір результату
+     */
+    public static BufferedImage scaleAndRotate(BufferedImage source, int width, int height,
+                                               double rotationAngle, Rectangle bounds) {
+        int quarterTurns = quarterTurns(rotationAngle);
+        boolean swapsAxes = quarterTurns % 2 == 1;
+        if (quarterTurns > 0
+                && bounds.width == (swapsAxes ? height : width)
+                && bounds.height == (swapsAxes ? width : height)) {
+            BufferedImage scaled = scaleAndRotateAffine(source, width, height, 0.0, new Rectangle(width, height));
+            return rotateQuarterTurns(scaled, quarterTurns);
+        }
+        return scaleAndRotateAffine(source, width, height, rotationAngle, bounds);
+    }
+
+    public static BufferedImage scaleAndRotateAffine(BufferedImage source, int width, int height,
+                                                     double rotationAngle, Rectangle bounds) {
+        AffineTransform transform = new AffineTransform();
+        if (rotationAngle != 0.0) {
+            transform.translate((bounds.width - width) / 2.0, (bounds.height - height) / 2.0);
+            transform.rotate(Math.toRadians(rotationAngle), width / 2.0, height / 2.0);
+        }
+        transform.scale((double) width / source.getWidth(), (double) height / source.getHeight());
+
+        BufferedImage target = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = target.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(source, transform, null);
+        g2d.dispose();
+        return target;
+    }
+
+    /**
+     * Повертає {@code TYPE_INT_ARGB} зображення за годинниковою стрілкою на {@code quarterTurns} × 90°.
+     * Поворот на 180° виконується на місці, для 90° і 270° виділяється лише результат.
+     */
+    public static BufferedImage rotateQuarterTurns(BufferedImage image, int quarterTurns) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            throw new IllegalArgumentException("Очікується зображення TYPE_INT_ARGB");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] source = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        switch (Math.floorMod(quarterTurns, 4)) {
+            case 0:
+                return image;
+            case 2:
+                for (int i = 0, j = source.length - 1; i < j; i++, j--) {
+                    int pixel = source[i];
+                    source[i] = source[j];
+                    source[j] = pixel;
+                }
+                return image;
+            default:
+                boolean clockwise = Math.floorMod(quarterTurns, 4) == 1;
+                BufferedImage rotated = new BufferedImage(height, width, BufferedImage.TYPE_INT_ARGB);
+                int[] target = ((DataBufferInt) rotated.getRaster().getDataBuffer()).getData();
+                for (int y = 0; y < height; y++) {
+                    int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int targetIndex = clockwise
+                                ? x * height + (height - 1 - y)
+                                : (width - 1 - x) * height + y;
+                        target[targetIndex] = source[row + x];
+                    }
+                }
+                return rotated;
+        }
+    }
+
+    private static int quarterTurns(double rotationAngle) {
+        if (rotationAngle % 90.0 != 0.0) {
+            return 0;
+        }
+        return Math.floorMod((int) (rotationAngle / 90.0), 4);
+    }
+}
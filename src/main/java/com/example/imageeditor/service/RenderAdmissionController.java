@@ -0,0 +1,146 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.domain.LayerGroup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Rectangle;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Допуск рендерингу колажу. Вартість оцінюється в байтах купи: полотно, декодовані джерела
+ * та перетворені шари. Колаж понад бюджет відхиляється одразу, а важкі рендери обмежені
+ * глобальним семафором: зайвий запит чекає в черзі не довше {@code queue-timeout}.
+ */
+@Component
+public class RenderAdmissionController {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Дозвіл на рендеринг; звільняється після кодування результату.
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+        Permit NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+
+    private final CanvasAllocator canvasAllocator;
+    private final long maxCanvasPixels;
+    private final long maxCostBytes;
+    private final long heavyCostBytes;
+    private final Duration queueTimeout;
+    private final Semaphore heavyRenders;
+
+    public RenderAdmissionController(CanvasAllocator canvasAllocator,
+                                     @Value("${collage.render.admission.max-canvas-pixels:400000000}") long maxCanvasPixels,
+                                     @Value("${collage.render.admission.max-cost-bytes:2147483648}") long maxCostBytes,
+                                     @Value("${collage.render.admission.heavy-cost-bytes:268435456}") long heavyCostBytes,
+                                     @Value("${collage.render.admission.max-concurrent-heavy:2}") int maxConcurrentHeavy,
+                                     @Value("${collage.render.admission.queue-timeout:PT30S}") Duration queueTimeout) {
+        this.canvasAllocator = canvasAllocator;
+        this.maxCanvasPixels = maxCanvasPixels;
+        this.maxCostBytes = maxCostBytes;
+        this.heavyCostBytes = heavyCostBytes;
+        this.queueTimeout = queueTimeout;
+        this.heavyRenders = new Semaphore(Math.max(1, maxConcurrentHeavy), true);
+    }
+
+    public Permit admit(Collage collage) {
+        return admit(collage.getCanvasWidth(), collage.getCanvasHeight(), estimateCost(collage));
+    }
+
+    /**
+     * Допуск перетворення окремого шару: розмір шару задає клієнт, тож він обмежений так само, як полотно.
+     */
+    public Permit admit(ImageLayer layer) {
+        Rectangle bounds = layer.getBounds();
+        return admit(bounds.width, bounds.height, estimateCost(layer));
+    }
+
+    private Permit admit(int width, int height, long cost) {
+        long pixels = (long) width * height;
+        if (pixels > maxCanvasPixels) {
+            throw new RenderRejectedException("Зображення " + width + "x" + height
+                    + " перевищує допустимі " + maxCanvasPixels + " пікселів", false);
+        }
+        if (cost > maxCostBytes) {
+            throw new RenderRejectedException("Рендеринг надто важкий: потрібно близько "
+                    + (cost >> 20) + " МБ пам'яті при ліміті " + (maxCostBytes >> 20) + " МБ", false);
+        }
+        if (cost < heavyCostBytes) {
+            return Permit.NONE;
+        }
+
+        try {
+            if (!heavyRenders.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new RenderRejectedException("Сервер зайнятий іншими великими рендерами, спробуйте пізніше", true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RenderRejectedException("Очікування рендерингу перервано", true);
+        }
+        return heavyRenders::release;
+    }
+
+    /**
+     * Оцінка пікової пам'яті рендерингу. Декодоване джерело не більше ніж учетверо перевищує
+     * шар за площею, бо декодування вибирає зменшену копію та проріджування під цільовий розмір.
+     */
+    public long estimateCost(Collage collage) {
+        long cost = canvasAllocator.estimateHeapBytes(collage.getCanvasWidth(), collage.getCanvasHeight());
+
+        List<ImageLayer> imageLayers = new ArrayList<>();
+        for (LayerComponent component : collage.getLayers()) {
+            component.collectImageLayers(imageLayers);
+            cost += groupRasterBytes(component);
+        }
+        for (ImageLayer layer : imageLayers) {
+            cost += estimateCost(layer);
+        }
+        return cost;
+    }
+
+    /**
+     * Сплощені растри групи та всіх вкладених груп.
+     */
+    private static long groupRasterBytes(LayerComponent component) {
+        if (!(component instanceof LayerGroup group)) {
+            return 0;
+        }
+        Rectangle local = group.getChildrenBounds();
+        long bytes = (long) local.width * local.height * BYTES_PER_PIXEL;
+        for (LayerComponent child : group.getChildren()) {
+            bytes += groupRasterBytes(child);
+        }
+        return bytes;
+    }
+
+    public long estimateCost(ImageLayer layer) {
+        Rectangle bounds = layer.getBounds();
+        long layerPixels = (long) bounds.width * bounds.height;
+        long decodedPixels = Math.min(sourcePixels(layer), 4 * (long) layer.getWidth() * layer.getHeight());
+        return (layerPixels + decodedPixels) * BYTES_PER_PIXEL;
+    }
+
+    private static long sourcePixels(ImageLayer layer) {
+        if (layer.getCropWidth() != null && layer.getCropHeight() != null
+                && layer.getCropWidth() > 0 && layer.getCropHeight() > 0) {
+            return (long) layer.getCropWidth() * layer.getCropHeight();
+        }
+        Image image = layer.getImage();
+        return image != null ? (long) image.getWidth() * image.getHeight() : 0;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.User;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Черга фонового рендерингу колажів. Обмежений пул воркерів і обмежена черга:
+ * коли черга заповнена, нове завдання відхиляється з {@link RejectedExecutionException}.
+ * Однакові завдання для того самого колажу й формату, що ще виконуються, об'єднуються.
+ * Результати експорту лежать у {@link RenderedCollageCache}, тож завдання лише посилається на файл
+ * і закріплює його в кеші, доки не мине час зберігання результату.
+ */
+@Service
+public class RenderJobService {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    @Getter
+    public static class RenderJob {
+        private final String id = UUID.randomUUID().toString();
+        private final Long collageId;
+        private final String format;
+        private final boolean saveToGallery;
+        private final Instant createdAt = Instant.now();
+        private final CompletableFuture<RenderJob> completion = new CompletableFuture<>();
+
+        private volatile Status status = Status.QUEUED;
+        private volatile Path resultFile;
+        private volatile String resultFileName;
+        private volatile Long resultImageId;
+        private volatile String error;
+        private volatile Instant finishedAt;
+
+        RenderJob(Long collageId, String format, boolean saveToGallery) {
+            this.collageId = collageId;
+            this.format = format;
+            this.saveToGallery = saveToGallery;
+        }
+
+        String dedupKey() {
+            return collageId + ":" + format + (saveToGallery ? ":save" : "");
+        }
+
+        public boolean isFinished() {
+            return status == Status.DONE || status == Status.FAILED;
+        }
+    }
+
+    private final CollageService collageService;
+    private final RenderedCollageCache renderedCollageCache;
+    private final Duration resultTtl;
+    private final ThreadPoolExecutor workers;
+
+    private final Map<String, RenderJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, RenderJob> activeJobs = new ConcurrentHashMap<>();
+
+    public RenderJobService(CollageService collageService,
+                            RenderedCollageCache renderedCollageCache,
+                            @Value("${collage.render.jobs.workers:2}") int workerCount,
+                            @Value("${collage.render.jobs.queue-capacity:16}") int queueCapacity,
+                            @Value("${collage.render.jobs.result-ttl:PT10M}") Duration resultTtl) {
+        this.collageService = collageService;
+        this.renderedCollageCache = renderedCollageCache;
+        this.resultTtl = resultTtl;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public RenderJob submitExport(Long collageId, String format) {
+        return submit(new RenderJob(collageId, format.toLowerCase(), false), null);
+    }
+
+    public RenderJob submitSave(Long collageId, User user) {
+        return submit(new RenderJob(collageId, "png", true), user);
+    }
+
+    public Optional<RenderJob> findJob(String jobId) {
+        purgeExpired();
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private RenderJob submit(RenderJob candidate, User user) {
+        purgeExpired();
+
+        RenderJob existing = activeJobs.putIfAbsent(candidate.dedupKey(), candidate);
+        if (existing != null) {
+            return existing;
+        }
+
+        jobs.put(candidate.getId(), candidate);
+        try {
+            workers.execute(() -> run(candidate, user));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(candidate.getId());
+            activeJobs.remove(candidate.dedupKey(), candidate);
+            throw e;
+        }
+        return candidate;
+    }
+
+    private void run(RenderJob job, User user) {
+        job.status = Status.RUNNING;
+        try {
+            if (job.isSaveToGallery()) {
+                Image image = collageService.renderAndSaveCollage(job.getCollageId(), user);
+                job.resultImageId = image.getId();
+            } else {
+                // Файл лишається закріпленим у кеші, доки завдання не буде видалено
+                Resource resource = collageService.generateCollageResource(job.getCollageId(), job.getFormat());
+                job.resultFile = resource.getFile().toPath();
+                job.resultFileName = resource.getFilename();
+            }
+            job.status = Status.DONE;
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.status = Status.FAILED;
+        } finally {
+            job.finishedAt = Instant.now();
+            activeJobs.remove(job.dedupKey(), job);
+            job.completion.complete(job);
+        }
+    }
+
+    private void purgeExpired() {
+        Instant threshold = Instant.now().minus(resultTtl);
+        for (RenderJob job : jobs.values()) {
+            if (job.getFinishedAt() != null && job.getFinishedAt().isBefore(threshold)
+                    && jobs.remove(job.getId(), job) && job.getResultFile() != null) {
+                renderedCollageCache.unpin(job.getResultFile());
+            }
+        }
+    }
+}
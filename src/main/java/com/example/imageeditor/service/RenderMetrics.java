@@ -0,0 +1,141 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.domain.LayerGroup;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.Hibernate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики конвеєра зображень: час декодування, перетворення шару, компонування, кодування
+ * й збереження завантажень, а також розмір результату, кількість пікселів полотна і шарів колажу.
+ * Доступні через Actuator ({@code /actuator/metrics/imageeditor.*}).
+ */
+@Component
+public class RenderMetrics {
+
+    @FunctionalInterface
+    public interface IoCall<T> {
+        T call() throws IOException;
+    }
+
+    /** Формати джерел, які отримують власний тег; решта потрапляє в {@code other}. */
+    private static final Set<String> SOURCE_FORMATS = Set.of("png", "jpeg", "gif", "bmp", "webp");
+
+    private final MeterRegistry registry;
+
+    public RenderMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T> T timeDecode(String format, IoCall<T> call) throws IOException {
+        return time(timer("imageeditor.image.decode", "Декодування джерела шару", "format", sourceFormat(format)), call);
+    }
+
+    public <T> T timeTransform(LayerComponent layer, IoCall<T> call) throws IOException {
+        return time(timer("imageeditor.layer.transform", "Кадрування, масштабування й поворот шару",
+                "layer.type", layerType(layer)), call);
+    }
+
+    public <T> T timeComposite(String mode, IoCall<T> call) throws IOException {
+        return time(timer("imageeditor.collage.composite", "Компонування шарів на полотно", "mode", mode), call);
+    }
+
+    public void recordEncode(String format, long nanos, long bytes) {
+        timer("imageeditor.collage.encode", "Кодування колажу", "format", normalize(format))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("imageeditor.collage.encode.bytes")
+                .description("Розмір закодованого колажу")
+                .baseUnit("bytes")
+                .tag("format", normalize(format))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    public void recordStore(String format, long nanos) {
+        timer("imageeditor.image.store", "Збереження завантаженого зображення", "format", sourceFormat(format))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Розмір полотна та кількість шарів кожного типу, включно з вкладеними в групи. */
+    public void recordCollage(Collage collage) {
+        DistributionSummary.builder("imageeditor.collage.canvas.pixels")
+                .description("Кількість пікселів полотна")
+                .baseUnit("pixels")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record((double) collage.getCanvasWidth() * collage.getCanvasHeight());
+
+        Map<String, Integer> counts = new TreeMap<>();
+        counts.put("ImageLayer", 0);
+        counts.put("LayerGroup", 0);
+        countLayers(collage.getLayers(), counts);
+        counts.forEach((type, count) -> DistributionSummary.builder("imageeditor.collage.layers")
+                .description("Кількість шарів у колажі")
+                .tag("layer.type", type)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(count));
+    }
+
+    private void countLayers(List<LayerComponent> layers, Map<String, Integer> counts) {
+        for (LayerComponent layer : layers) {
+            counts.merge(layerType(layer), 1, Integer::sum);
+            if (Hibernate.unproxy(layer) instanceof LayerGroup group) {
+                countLayers(group.getChildren(), counts);
+            }
+        }
+    }
+
+    private Timer timer(String name, String description, String tagKey, String tagValue) {
+        return Timer.builder(name)
+                .description(description)
+                .tag(tagKey, tagValue)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static <T> T time(Timer timer, IoCall<T> call) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String layerType(LayerComponent layer) {
+        return Hibernate.getClass(layer).getSimpleName();
+    }
+
+    /**
+     * Формат джерела походить від імені файлу, яке надіслав клієнт, тож тег обмежено
+     * фіксованим набором значень: інакше кожне нове ім'я реєструвало б окремий таймер.
+     */
+    static String sourceFormat(String format) {
+        if (format == null) {
+            return "other";
+        }
+        String value = format.toLowerCase(Locale.ROOT);
+        if (value.equals("jpg")) {
+            value = "jpeg";
+        }
+        return SOURCE_FORMATS.contains(value) ? value : "other";
+    }
+
+    private static String normalize(String format) {
+        return format == null ? "unknown" : format.toLowerCase();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.imageeditor.service;
+
+import lombok.Getter;
+
+/**
+ * Рендеринг колажу не допущено. {@link #isRetryable()} означає, що сервер лише тимчасово
+ * зайнятий іншими важкими рендерами; інакше колаж перевищує бюджет і повтор не допоможе.
+ */
+@Getter
+public class RenderRejectedException extends RuntimeException {
+
+    private final boolean retryable;
+
+    public RenderRejectedException(String message, boolean retryable) {
+        super(message);
+        this.retryable = retryable;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.imageeditor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Дисковий кеш закодованих колажів. Ключ — id колажу, його ревізія та формат, тому після будь-якої
+ * зміни шарів старий файл просто перестає знаходитися. Загальний розмір обмежений,
+ * найдавніше використані файли видаляються першими. Закріплені файли, які ще віддаються клієнту
+ * або на які посилаються завершені фонові завдання, не видаляються, доки їх не відкріплять.
+ */
+@Component
+public class RenderedCollageCache {
+
+    private static final Pattern FILE_NAME = Pattern.compile("(\\d+)-(\\d+)\\.(\\w+)");
+
+    @FunctionalInterface
+    public interface Encoder {
+        void encode(Path target) throws IOException;
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> pins = new HashMap<>();
+    private long totalBytes;
+
+    public RenderedCollageCache(@Value("${collage.render.cache.dir:./render-cache}") String directory,
+                                @Value("${collage.render.cache.max-bytes:1073741824}") long maxBytes) throws IOException {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.directory);
+        loadExistingEntries();
+    }
+
+    public synchronized Optional<Path> find(Long collageId, long revision, String format) {
+        String fileName = fileName(collageId, revision, format);
+        if (entries.get(fileName) == null) {
+            return Optional.empty();
+        }
+        return Optional.of(directory.resolve(fileName));
+    }
+
+    public Path getOrCreate(Long collageId, long revision, String format, Encoder encoder) throws IOException {
+        return getOrCreate(collageId, revision, format, encoder, false);
+    }
+
+    /**
+     * Те саме, що {@link #getOrCreate}, але файл закріплюється ще під замком кешу, тож його не
+     * видалить паралельний запис іншої ревізії. Викликач має звільнити файл через {@link #unpin}.
+     */
+    public Path getOrCreatePinned(Long collageId, long revision, String format, Encoder encoder) throws IOException {
+        return getOrCreate(collageId, revision, format, encoder, true);
+    }
+
+    private Path getOrCreate(Long collageId, long revision, String format, Encoder encoder, boolean pin)
+            throws IOException {
+        String fileName = fileName(collageId, revision, format);
+        Path target = directory.resolve(fileName);
+        synchronized (this) {
+            if (entries.get(fileName) != null && Files.exists(target)) {
+                if (pin) {
+                    pins.merge(fileName, 1, Integer::sum);
+                }
+                return target;
+            }
+        }
+
+        Path tempFile = directory.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            encoder.encode(tempFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            removeOtherRevisions(collageId, revision);
+            Long previous = entries.put(fileName, Files.size(target));
+            totalBytes += entries.get(fileName) - (previous != null ? previous : 0);
+            if (pin) {
+                pins.merge(fileName, 1, Integer::sum);
+            }
+            evictOverflow(fileName);
+        }
+        return target;
+    }
+
+    public synchronized void invalidate(Long collageId) {
+        removeOtherRevisions(collageId, -1);
+    }
+
+    public synchronized void unpin(Path file) {
+        String fileName = file.getFileName().toString();
+        if (pins.computeIfPresent(fileName, (name, count) -> count > 1 ? count - 1 : null) == null) {
+            evictOverflow(null);
+        }
+    }
+
+    private void removeOtherRevisions(Long collageId, long keepRevision) {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            Matcher matcher = FILE_NAME.matcher(entry.getKey());
+            if (matcher.matches()
+                    && Long.parseLong(matcher.group(1)) == collageId
+                    && Long.parseLong(matcher.group(2)) != keepRevision
+                    && !pins.containsKey(entry.getKey())) {
+                delete(entry);
+                it.remove();
+            }
+        }
+    }
+
+    private void evictOverflow(String keep) {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (!eldest.getKey().equals(keep) && !pins.containsKey(eldest.getKey())) {
+                delete(eldest);
+                it.remove();
+            }
+        }
+    }
+
+    private void delete(Map.Entry<String, Long> entry) {
+        totalBytes -= entry.getValue();
+        try {
+            Files.deleteIfExists(directory.resolve(entry.getKey()));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void loadExistingEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (FILE_NAME.matcher(file.getFileName().toString()).matches()) {
+                    files.add(file);
+                }
+            }
+        }
+
+        files.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        for (Path file : files) {
+            long size = Files.size(file);
+            entries.put(file.getFileName().toString(), size);
+            totalBytes += size;
+        }
+        evictOverflow(null);
+    }
+
+    private static String fileName(Long collageId, long revision, String format) {
+        return collageId + "-" + revision + "." + format;
+    }
+}
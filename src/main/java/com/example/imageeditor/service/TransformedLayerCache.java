@@ -0,0 +1,67 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Кеш результатів кадрування, масштабування та повороту шару. Ключ містить лише поля,
+ * від яких залежить результат, тому клони шарів і стани після undo/redo
+ * з тією самою геометрією отримують уже обчислене зображення.
+ */
+@Component
+public class TransformedLayerCache extends ImageLruCache<TransformedLayerCache.Key> {
+
+    public record Key(
+            Long imageId,
+            int width,
+            int height,
+            double rotationAngle,
+            Integer cropX,
+            Integer cropY,
+            Integer cropWidth,
+            Integer cropHeight
+    ) {
+        public static Key of(ImageLayer layer) {
+            return new Key(
+                    layer.getImage().getId(),
+                    layer.getWidth(),
+                    layer.getHeight(),
+                    layer.getRotationAngle(),
+                    layer.getCropX(),
+                    layer.getCropY(),
+                    layer.getCropWidth(),
+                    layer.getCropHeight()
+            );
+        }
+
+        public String fingerprint() {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256")
+                        .digest(toString().getBytes(StandardCharsets.UTF_8));
+                return HexFormat.of().formatHex(digest, 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    public TransformedLayerCache(@Value("${image.cache.transformed.max-bytes:134217728}") long maxWeightBytes) {
+        super(maxWeightBytes);
+    }
+
+    public BufferedImage get(ImageLayer layer, Loader loader) throws IOException {
+        return get(Key.of(layer), loader);
+    }
+
+    public void invalidate(Long imageId) {
+        invalidateIf(key -> key.imageId().equals(imageId));
+    }
+}
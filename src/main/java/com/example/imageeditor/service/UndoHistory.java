@@ -0,0 +1,292 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayerMemento;
+import com.example.imageeditor.domain.UndoStep;
+import com.example.imageeditor.domain.UndoStep.Direction;
+import com.example.imageeditor.repository.UndoStepRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Історія скасування колажів. Крок — це знімки одного чи кількох шарів, упаковані в {@code byte[]}
+ * без об'єктів-обгорток. Кількість кроків у кожному напрямку обмежена, найстаріші відкидаються.
+ * <p>
+ * Режим {@code memory} тримає історію в пам'яті вузла: додатково обмежений розмір історії колажу
+ * в обох напрямках, а історія колажу, який довго не редагували, вивантажується. Режим {@code database} зберігає кроки
+ * в таблиці {@code undo_steps} у транзакції редагування, тож історія переживає перезапуск і спільна
+ * для всіх вузлів за балансувальником.
+ */
+@Component
+public class UndoHistory implements MeterBinder {
+
+    private static final int HEADER_BYTES = Short.BYTES;
+    private static final int MEMENTO_BYTES = Long.BYTES + 4 * Integer.BYTES + Double.BYTES + 1;
+    private static final int MAX_STEP_MEMENTOS = 0xFFFF;
+
+    /**
+     * Найбільший можливий крок: усі знімки з повним кадруванням.
+     */
+    public static final int MAX_PAYLOAD_BYTES = HEADER_BYTES + MAX_STEP_MEMENTOS * (MEMENTO_BYTES + 4 * Integer.BYTES);
+
+    private final UndoStepRepository undoStepRepository;
+    private final boolean persistent;
+    private final int maxSteps;
+    private final long maxBytesPerCollage;
+    private final Duration idleTimeout;
+    private final long idleSweepIntervalNanos;
+
+    private final Map<Long, History> histories = new ConcurrentHashMap<>();
+    private final AtomicLong nextIdleSweep = new AtomicLong(System.nanoTime());
+
+    public UndoHistory(UndoStepRepository undoStepRepository,
+                       @Value("${collage.undo.store:memory}") String store,
+                       @Value("${collage.undo.max-steps:100}") int maxSteps,
+                       @Value("${collage.undo.max-bytes-per-collage:262144}") long maxBytesPerCollage,
+                       @Value("${collage.undo.idle-timeout:PT30M}") Duration idleTimeout) {
+        this.undoStepRepository = undoStepRepository;
+        this.persistent = switch (store.toLowerCase()) {
+            case "memory" -> false;
+            case "database" -> true;
+            default -> throw new IllegalArgumentException("Невідоме сховище історії: " + store);
+        };
+        this.maxSteps = Math.max(1, maxSteps);
+        this.maxBytesPerCollage = maxBytesPerCollage;
+        this.idleTimeout = idleTimeout;
+        // Перегляд усіх історій на кожному записі коштує O(колажів), тож він виконується не частіше за чверть тайм-ауту
+        this.idleSweepIntervalNanos = idleTimeout.toNanos() / 4;
+    }
+
+    /**
+     * Новий крок редагування: стає вершиною історії скасування, а історія повтору очищується.
+     */
+    public void record(Long collageId, List<ImageLayerMemento> step) {
+        push(collageId, Direction.UNDO, step);
+        if (persistent) {
+            undoStepRepository.deleteByCollageIdAndDirection(collageId, Direction.REDO);
+        } else {
+            history(collageId).clear(Direction.REDO);
+        }
+    }
+
+    public void push(Long collageId, Direction direction, List<ImageLayerMemento> step) {
+        byte[] payload = encode(step);
+        if (persistent) {
+            undoStepRepository.save(new UndoStep(collageId, direction, payload));
+            List<Long> overflow = undoStepRepository.findIdsNewestFirst(collageId, direction,
+                    PageRequest.of(maxSteps, 1));
+            if (!overflow.isEmpty()) {
+                undoStepRepository.deleteUpTo(collageId, direction, overflow.get(0));
+            }
+        } else {
+            history(collageId).push(direction, payload);
+        }
+    }
+
+    public Optional<List<ImageLayerMemento>> pop(Long collageId, Direction direction) {
+        if (persistent) {
+            return undoStepRepository.findFirstByCollageIdAndDirectionOrderByIdDesc(collageId, direction)
+                    .map(step -> {
+                        undoStepRepository.delete(step);
+                        return decode(step.getPayload());
+                    });
+        }
+        History history = histories.get(collageId);
+        if (history == null) {
+            return Optional.empty();
+        }
+        history.touch();
+        return Optional.ofNullable(history.pop(direction)).map(UndoHistory::decode);
+    }
+
+    public void clear(Long collageId) {
+        if (persistent) {
+            undoStepRepository.deleteByCollageId(collageId);
+        } else {
+            histories.remove(collageId);
+        }
+    }
+
+    /**
+     * Байти, які історія колажу займає в пам'яті вузла; у режиму {@code database} завжди 0.
+     */
+    public long retainedBytes(Long collageId) {
+        History history = histories.get(collageId);
+        return history != null ? history.bytes() : 0;
+    }
+
+    public long retainedBytes() {
+        return histories.values().stream().mapToLong(History::bytes).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("imageeditor.undo.collages", histories, Map::size).register(registry);
+        Gauge.builder("imageeditor.undo.retained", this, UndoHistory::retainedBytes)
+                .baseUnit("bytes").register(registry);
+    }
+
+    private History history(Long collageId) {
+        evictIdle();
+        History history = histories.computeIfAbsent(collageId, id -> new History());
+        history.touch();
+        return history;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long due = nextIdleSweep.get();
+        if (now - due < 0 || !nextIdleSweep.compareAndSet(due, now + idleSweepIntervalNanos)) {
+            return;
+        }
+        Iterator<History> it = histories.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastAccess >= idleTimeout.toNanos()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Формат кроку: кількість знімків (short), далі для кожного id шару, позиція, розмір, кут
+     * і маска заповнених полів кадрування, за якою йдуть лише присутні значення.
+     */
+    static byte[] encode(List<ImageLayerMemento> step) {
+        if (step.size() > MAX_STEP_MEMENTOS) {
+            throw new IllegalArgumentException("Забагато шарів в одному кроці історії: " + step.size());
+        }
+        int size = HEADER_BYTES;
+        for (ImageLayerMemento memento : step) {
+            size += MEMENTO_BYTES + Integer.BYTES * cropCount(memento);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putShort((short) step.size());
+        for (ImageLayerMemento memento : step) {
+            buffer.putLong(memento.layerId());
+            buffer.putInt(memento.positionX());
+            buffer.putInt(memento.positionY());
+            buffer.putInt(memento.width());
+            buffer.putInt(memento.height());
+            buffer.putDouble(memento.rotationAngle());
+            Integer[] crop = crop(memento);
+            byte mask = 0;
+            for (int i = 0; i < crop.length; i++) {
+                if (crop[i] != null) {
+                    mask |= (byte) (1 << i);
+                }
+            }
+            buffer.put(mask);
+            for (Integer value : crop) {
+                if (value != null) {
+                    buffer.putInt(value);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    static List<ImageLayerMemento> decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int count = Short.toUnsignedInt(buffer.getShort());
+        List<ImageLayerMemento> step = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long layerId = buffer.getLong();
+            int positionX = buffer.getInt();
+            int positionY = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            double rotationAngle = buffer.getDouble();
+            byte mask = buffer.get();
+            Integer[] crop = new Integer[4];
+            for (int j = 0; j < crop.length; j++) {
+                crop[j] = (mask & (1 << j)) != 0 ? buffer.getInt() : null;
+            }
+            step.add(new ImageLayerMemento(layerId, positionX, positionY, width, height, rotationAngle,
+                    crop[0], crop[1], crop[2], crop[3]));
+        }
+        return step;
+    }
+
+    private static Integer[] crop(ImageLayerMemento memento) {
+        return new Integer[]{memento.cropX(), memento.cropY(), memento.cropWidth(), memento.cropHeight()};
+    }
+
+    private static int cropCount(ImageLayerMemento memento) {
+        int count = 0;
+        for (Integer value : crop(memento)) {
+            if (value != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private final class History {
+        private final ArrayDeque<byte[]> undo = new ArrayDeque<>();
+        private final ArrayDeque<byte[]> redo = new ArrayDeque<>();
+        private long bytes;
+        private volatile long lastAccess = System.nanoTime();
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized void push(Direction direction, byte[] payload) {
+            ArrayDeque<byte[]> steps = steps(direction);
+            steps.push(payload);
+            bytes += payload.length;
+            while (steps.size() > maxSteps) {
+                bytes -= steps.removeLast().length;
+            }
+            // Спершу відкидаються найстаріші кроки повтору, потім скасування; щойно доданий крок лишається
+            while (bytes > maxBytesPerCollage) {
+                if (redo.size() > (direction == Direction.REDO ? 1 : 0)) {
+                    bytes -= redo.removeLast().length;
+                } else if (undo.size() > (direction == Direction.UNDO ? 1 : 0)) {
+                    bytes -= undo.removeLast().length;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        synchronized byte[] pop(Direction direction) {
+            byte[] payload = steps(direction).poll();
+            if (payload != null) {
+                bytes -= payload.length;
+            }
+            return payload;
+        }
+
+        synchronized void clear(Direction direction) {
+            ArrayDeque<byte[]> steps = steps(direction);
+            for (byte[] payload : steps) {
+                bytes -= payload.length;
+            }
+            steps.clear();
+        }
+
+        private ArrayDeque<byte[]> steps(Direction direction) {
+            return direction == Direction.UNDO ? undo : redo;
+        }
+    }
+}
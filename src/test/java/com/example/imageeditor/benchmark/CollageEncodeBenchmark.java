@@ -0,0 +1,73 @@
+package com.example.imageeditor.benchmark;
+
+import com.example.imageeditor.service.CollageRenderer;
+import com.example.imageeditor.service.CollageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодування відрендереного колажу 2000x1500 з 10 шарами в кожен формат експорту.
+ * Непрозорі формати отримують полотно того самого типу, що й під час справжнього експорту.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollageEncodeBenchmark {
+
+    @Param({"png", "jpg", "gif", "bmp", "tiff"})
+    public String format;
+
+    private Path directory;
+    private Path target;
+    private BufferedImage canvas;
+    private final CollageService collageService = new CollageService(null, null, null, null, null, null,
+            SyntheticImages.METRICS, null, null);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("encode-benchmark-");
+        target = directory.resolve("collage." + format);
+        CollageRenderer renderer = SyntheticImages.renderer(
+                SyntheticImages.imageService(SyntheticImages.LARGE_CACHE, SyntheticImages.NO_CACHE),
+                CollageRenderer.RenderMode.SEQUENTIAL);
+        try {
+            canvas = renderer.render(
+                    SyntheticImages.collage(SyntheticImages.storedImage(directory, 1, 3000, 2000), 10, 2000, 1500),
+                    CollageService.isOpaqueFormat(format));
+        } finally {
+            renderer.shutdown();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        collageService.encode(canvas, format, target);
+        return Files.size(target);
+    }
+}
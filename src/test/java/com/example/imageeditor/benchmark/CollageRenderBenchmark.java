@@ -0,0 +1,68 @@
+package com.example.imageeditor.benchmark;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.service.CollageRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Повний рендеринг колажу 3000x2000 з 1/10/100 шарами. Кеші шарів прогріті, тож вимірюється
+ * компонування; вартість перетворень окремо — у {@link LayerTransformBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollageRenderBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int layers;
+
+    @Param({"SEQUENTIAL", "TILED"})
+    public CollageRenderer.RenderMode mode;
+
+    private Path directory;
+    private CollageRenderer renderer;
+    private Collage collage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("render-benchmark-");
+        collage = SyntheticImages.collage(SyntheticImages.storedImage(directory, 1, 3000, 2000),
+                layers, 3000, 2000);
+        renderer = SyntheticImages.renderer(
+                SyntheticImages.imageService(SyntheticImages.LARGE_CACHE, SyntheticImages.LARGE_CACHE), mode);
+        renderer.render(collage);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        renderer.shutdown();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public BufferedImage render() throws IOException {
+        return renderer.render(collage);
+    }
+}
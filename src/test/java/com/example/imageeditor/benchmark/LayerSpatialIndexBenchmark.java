@@ -0,0 +1,95 @@
+package com.example.imageeditor.benchmark;
+
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.service.LayerSpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Побудова просторового індексу, влучання в точку та запит області 512x512 на полотні 8000x6000
+ * проти лінійного перебору меж усіх шарів.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayerSpatialIndexBenchmark {
+
+    private static final int WIDTH = 8000;
+    private static final int HEIGHT = 6000;
+
+    @Param({"100", "1000", "5000"})
+    public int layers;
+
+    private List<LayerComponent> components;
+    private LayerSpatialIndex index;
+    private Rectangle region;
+    private int x;
+    private int y;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(11);
+        components = new ArrayList<>(layers);
+        for (int i = 0; i < layers; i++) {
+            ImageLayer layer = new ImageLayer();
+            layer.setId((long) i);
+            layer.setPositionX(random.nextInt(WIDTH));
+            layer.setPositionY(random.nextInt(HEIGHT));
+            layer.setWidth(50 + random.nextInt(500));
+            layer.setHeight(50 + random.nextInt(500));
+            layer.setRotationAngle(random.nextInt(8) * 45);
+            components.add(layer);
+        }
+        index = LayerSpatialIndex.build(components, WIDTH, HEIGHT);
+        region = new Rectangle(WIDTH / 2, HEIGHT / 2, 512, 512);
+        x = WIDTH / 2 + 100;
+        y = HEIGHT / 2 + 100;
+    }
+
+    @Benchmark
+    public LayerSpatialIndex build() {
+        return LayerSpatialIndex.build(components, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public Optional<ImageLayer> hitTest() {
+        return index.hitTest(x, y);
+    }
+
+    @Benchmark
+    public List<LayerComponent> regionQuery() {
+        return index.componentsIn(region);
+    }
+
+    @Benchmark
+    public List<LayerComponent> regionLinearScan() {
+        List<LayerComponent> visible = new ArrayList<>();
+        for (LayerComponent component : components) {
+            if (component.getBounds().intersects(region)) {
+                visible.add(component);
+            }
+        }
+        return visible;
+    }
+}
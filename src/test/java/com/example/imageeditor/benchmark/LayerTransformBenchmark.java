@@ -0,0 +1,75 @@
+package com.example.imageeditor.benchmark;
+
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.service.ImageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ImageService#applyTransformationsToLayer(ImageLayer)} для джерела 3000x2000 з різними
+ * кадруванням, цільовою шириною та поворотом. Кеш результатів вимкнено; {@code decodedCache=cold}
+ * щоразу декодує файл, {@code warm} вимірює лише перетворення.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayerTransformBenchmark {
+
+    @Param({"false", "true"})
+    public boolean crop;
+
+    @Param({"600", "2400"})
+    public int targetWidth;
+
+    @Param({"0", "90", "30"})
+    public double rotationAngle;
+
+    @Param({"warm", "cold"})
+    public String decodedCache;
+
+    private Path directory;
+    private ImageService imageService;
+    private ImageLayer layer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("transform-benchmark-");
+        Image image = SyntheticImages.storedImage(directory, 1, 3000, 2000);
+        imageService = SyntheticImages.imageService(
+                "warm".equals(decodedCache) ? SyntheticImages.LARGE_CACHE : SyntheticImages.NO_CACHE,
+                SyntheticImages.NO_CACHE);
+        layer = SyntheticImages.layer(image, targetWidth, targetWidth * 2 / 3, rotationAngle, crop);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public BufferedImage applyTransformations() throws IOException {
+        return imageService.applyTransformationsToLayer(layer);
+    }
+}
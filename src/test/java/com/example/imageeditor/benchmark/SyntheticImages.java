@@ -0,0 +1,119 @@
+package com.example.imageeditor.benchmark;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.service.CanvasAllocator;
+import com.example.imageeditor.service.CollageRenderer;
+import com.example.imageeditor.service.DecodedImageCache;
+import com.example.imageeditor.service.GroupRasterCache;
+import com.example.imageeditor.service.ImageRenditionGenerator;
+import com.example.imageeditor.service.ImageService;
+import com.example.imageeditor.service.RenderMetrics;
+import com.example.imageeditor.service.TransformedLayerCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Синтетичні зображення й колажі для бенчмарків: сервіси збираються без Spring і бази даних.
+ */
+final class SyntheticImages {
+
+    static final long NO_CACHE = 0;
+    static final long LARGE_CACHE = 1L << 30;
+    static final RenderMetrics METRICS = new RenderMetrics(new SimpleMeterRegistry());
+
+    private SyntheticImages() {
+    }
+
+    /** Записує PNG з градієнтом і шумом та створює для нього {@link Image} зі зменшеними копіями. */
+    static Image storedImage(Path directory, long id, int width, int height) throws IOException {
+        BufferedImage pixels = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = pixels.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.DARK_GRAY));
+        g2d.fillRect(0, 0, width, height);
+        Random random = new Random(id);
+        for (int i = 0; i < 200; i++) {
+            g2d.setColor(new Color(random.nextInt()));
+            g2d.fillOval(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(200), 20 + random.nextInt(200));
+        }
+        g2d.dispose();
+
+        Path file = directory.resolve("image-" + id + ".png");
+        ImageIO.write(pixels, "png", file.toFile());
+
+        Image image = new Image();
+        image.setId(id);
+        image.setFileName(file.getFileName().toString());
+        image.setPath(file.toString());
+        image.setFileFormat("png");
+        image.setWidth(width);
+        image.setHeight(height);
+        image.setRenditions(new ArrayList<>(renditionGenerator().generate(file, width, height)));
+        return image;
+    }
+
+    static ImageLayer layer(Image image, int width, int height, double rotationAngle, boolean crop) {
+        ImageLayer layer = new ImageLayer();
+        layer.setImage(image);
+        layer.setWidth(width);
+        layer.setHeight(height);
+        layer.setRotationAngle(rotationAngle);
+        if (crop) {
+            layer.setCropX(image.getWidth() / 4);
+            layer.setCropY(image.getHeight() / 4);
+            layer.setCropWidth(image.getWidth() / 2);
+            layer.setCropHeight(image.getHeight() / 2);
+        }
+        return layer;
+    }
+
+    /** Колаж з {@code layerCount} шарами, розкиданими по полотну з різними кадруваннями й поворотами. */
+    static Collage collage(Image image, int layerCount, int canvasWidth, int canvasHeight) {
+        Collage collage = new Collage();
+        collage.setName("benchmark");
+        collage.setCanvasWidth(canvasWidth);
+        collage.setCanvasHeight(canvasHeight);
+
+        Random random = new Random(42);
+        for (int i = 0; i < layerCount; i++) {
+            ImageLayer layer = layer(image, 200 + random.nextInt(600), 150 + random.nextInt(450),
+                    random.nextInt(4) * 90, i % 3 == 0);
+            layer.setPositionX(random.nextInt(canvasWidth));
+            layer.setPositionY(random.nextInt(canvasHeight));
+            layer.setZIndex(i);
+            layer.setCollage(collage);
+            collage.getLayers().add(layer);
+        }
+        return collage;
+    }
+
+    static ImageService imageService(long decodedCacheBytes, long transformedCacheBytes) {
+        return new ImageService(null, null, null,
+                new DecodedImageCache(decodedCacheBytes),
+                new TransformedLayerCache(transformedCacheBytes),
+                new GroupRasterCache(transformedCacheBytes),
+                renditionGenerator(),
+                METRICS,
+                null,
+                null);
+    }
+
+    static CollageRenderer renderer(ImageService imageService, CollageRenderer.RenderMode mode) {
+        return new CollageRenderer(imageService, new CanvasAllocator(Long.MAX_VALUE, 512, ""), METRICS,
+                mode.name(), 1024, 0, 0, 4);
+    }
+
+    private static ImageRenditionGenerator renditionGenerator() {
+        return new ImageRenditionGenerator(new int[]{256, 512, 1024, 2048});
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.imageeditor.controller;
+
+import com.example.imageeditor.repository.CollageRepository;
+import com.example.imageeditor.service.ImageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ImageControllerTests {
+
+    private static final String HASH = "ab".repeat(32);
+
+    @TempDir
+    Path tempDir;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path file = Files.write(tempDir.resolve("stored.png"), "0123456789".getBytes());
+
+        ImageService imageService = mock(ImageService.class);
+        when(imageService.findStoredFile("stored.png"))
+                .thenReturn(Optional.of(new ImageService.StoredFile(file, "png", HASH)));
+        when(imageService.findStoredFile("missing.png")).thenReturn(Optional.empty());
+
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new ImageController(imageService, mock(CollageRepository.class)))
+                .build();
+    }
+
+    @Test
+    void servesFileWithValidatorsAndImmutableCaching() throws Exception {
+        mockMvc.perform(get("/api/images/stored.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"))
+                .andExpect(content().bytes("0123456789".getBytes()));
+    }
+
+    @Test
+    void answersNotModifiedForMatchingEtag() throws Exception {
+        mockMvc.perform(get("/api/images/stored.png").header(HttpHeaders.IF_NONE_MATCH, "\"" + HASH + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void servesSingleByteRange() throws Exception {
+        mockMvc.perform(get("/api/images/stored.png").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(content().bytes("2345".getBytes()));
+
+        mockMvc.perform(get("/api/images/stored.png").header(HttpHeaders.RANGE, "bytes=20-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeDoesNotMatch() throws Exception {
+        mockMvc.perform(get("/api/images/stored.png")
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("0123456789".getBytes()));
+    }
+
+    @Test
+    void returnsNotFoundForUnknownFile() throws Exception {
+        mockMvc.perform(get("/api/images/missing.png"))
+                .andExpect(status().isNotFound());
+    }
+}
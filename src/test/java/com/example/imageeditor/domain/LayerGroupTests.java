@@ -0,0 +1,38 @@
+package com.example.imageeditor.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import static com.example.imageeditor.domain.PersistedCollages.collage;
+import static com.example.imageeditor.domain.PersistedCollages.image;
+import static com.example.imageeditor.domain.PersistedCollages.imageLayer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class LayerGroupTests {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void legacyGroupTransformIsResetOnLoad() {
+        Collage collage = collage(entityManager);
+        LayerGroup group = new LayerGroup();
+        group.setCollage(collage);
+        group.add(imageLayer(image(entityManager, collage.getUser(), 0), 0));
+        entityManager.persist(group);
+        entityManager.flush();
+        entityManager.getEntityManager().createQuery("UPDATE LayerGroup g "
+                        + "SET g.ownsTransform = NULL, g.positionX = 30, g.rotationAngle = 45 WHERE g.id = :id")
+                .setParameter("id", group.getId())
+                .executeUpdate();
+        entityManager.clear();
+
+        LayerGroup legacy = entityManager.find(LayerGroup.class, group.getId());
+        assertEquals(0, legacy.getPositionX());
+        assertEquals(0.0, legacy.getRotationAngle());
+        assertEquals(Boolean.TRUE, legacy.getOwnsTransform());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.imageeditor.domain;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Збережені в базу колажі для тестів з {@code @DataJpaTest}: власник, зображення 100x100
+ * зі зменшеною копією 64x64 і шари розміром із зображення.
+ */
+public final class PersistedCollages {
+
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    private PersistedCollages() {
+    }
+
+    /** Колаж 1000x1000 з {@code layerCount} шарами верхнього рівня; сесія після збереження очищується. */
+    public static Long collageWithLayers(TestEntityManager entityManager, int layerCount) {
+        Collage collage = collage(entityManager);
+        for (int i = 0; i < layerCount; i++) {
+            ImageLayer layer = imageLayer(image(entityManager, collage.getUser(), i), i);
+            layer.setCollage(collage);
+            entityManager.persist(layer);
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+        return collage.getId();
+    }
+
+    public static Collage collage(TestEntityManager entityManager) {
+        int n = USERS.incrementAndGet();
+        User user = User.builder()
+                .username("render-user-" + n)
+                .email("render-user-" + n + "@example.com")
+                .password("secret")
+                .build();
+        entityManager.persist(user);
+
+        Collage collage = new Collage();
+        collage.setName("render");
+        collage.setUser(user);
+        collage.setCanvasWidth(1000);
+        collage.setCanvasHeight(1000);
+        entityManager.persist(collage);
+        return collage;
+    }
+
+    public static Image image(TestEntityManager entityManager, User user, int i) {
+        String name = "image-" + user.getId() + "-" + i;
+        Image image = new Image();
+        image.setFileName(name + ".png");
+        image.setPath("uploads/" + name + ".png");
+        image.setFileFormat("png");
+        image.setOwner(user);
+        image.setWidth(100);
+        image.setHeight(100);
+        image.getRenditions().add(new ImageRendition(64, name + "_64.png", 64, 64, null));
+        entityManager.persist(image);
+        return image;
+    }
+
+    public static ImageLayer imageLayer(Image image, int zIndex) {
+        ImageLayer layer = new ImageLayer();
+        layer.setImage(image);
+        layer.setWidth(100);
+        layer.setHeight(100);
+        layer.setZIndex(zIndex);
+        return layer;
+    }
+}
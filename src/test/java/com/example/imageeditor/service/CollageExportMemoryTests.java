@@ -0,0 +1,72 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CollageExportMemoryTests {
+
+    private final RenderMetrics metrics = SyntheticCollages.metrics();
+    private final CollageRenderer renderer = SyntheticCollages.singleThreadedRenderer(
+            SyntheticCollages::syntheticImage, metrics);
+    private final CollageService collageService = SyntheticCollages.exportService(renderer, metrics);
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Test
+    void streamingExportAllocatesAtMostHalfOfBufferedExport() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Collage collage = SyntheticCollages.randomCollage(11, 600);
+        collage.setCanvasWidth(2000);
+        collage.setCanvasHeight(2000);
+
+        // прогрів, щоб у вимір не потрапило завантаження класів кодувальника
+        bufferedExport(collage);
+        collageService.writeCollage(collage, "tiff", tempDir.resolve("warmup.tiff"));
+
+        long threadId = Thread.currentThread().getId();
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        bufferedExport(collage);
+        long buffered = threads.getThreadAllocatedBytes(threadId) - before;
+
+        Path target = tempDir.resolve("export.tiff");
+        before = threads.getThreadAllocatedBytes(threadId);
+        collageService.writeCollage(collage, "tiff", target);
+        long streaming = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(Files.size(target) > 0);
+        assertTrue(streaming * 2 <= buffered,
+                "streaming export allocated " + streaming + " bytes, buffered export " + buffered);
+    }
+
+    /** Попередня реалізація: закодований файл збирається в пам'яті й копіюється в ресурс. */
+    private ByteArrayResource bufferedExport(Collage collage) throws Exception {
+        BufferedImage canvas = renderer.render(collage);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(canvas, "tiff", outputStream);
+        return new ByteArrayResource(outputStream.toByteArray());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.ImageLayer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static com.example.imageeditor.service.SyntheticCollages.pixels;
+import static com.example.imageeditor.service.SyntheticCollages.randomCollage;
+import static com.example.imageeditor.service.SyntheticCollages.renderer;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CollagePreviewServiceTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CollageRenderer renderer = renderer(SyntheticCollages::syntheticImage, new RenderMetrics(registry));
+    private final CollagePreviewService previewService = new CollagePreviewService(null, renderer, null, null,
+            Long.MAX_VALUE, 0.5);
+
+    @AfterEach
+    void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Test
+    void singleLayerEditRecompositesOnlyTheDirtyRegion() throws Exception {
+        Collage collage = randomCollage(7, 300);
+        previewService.update(collage);
+
+        ImageLayer moved = (ImageLayer) collage.getLayers().get(7);
+        moved.setPositionX(moved.getPositionX() + 120);
+        moved.setPositionY(moved.getPositionY() - 40);
+        collage.markModified();
+        previewService.update(collage);
+
+        ImageLayer resized = (ImageLayer) collage.getLayers().get(12);
+        resized.setWidth(resized.getWidth() / 2);
+        collage.markModified();
+        BufferedImage incremental = previewService.update(collage);
+
+        assertEquals(2, registry.get("imageeditor.collage.composite").tag("mode", "region").timer().count());
+        assertArrayEquals(pixels(renderer.render(collage, CollageRenderer.RenderMode.SEQUENTIAL)),
+                pixels(incremental));
+    }
+}
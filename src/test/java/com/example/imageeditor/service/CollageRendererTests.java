@@ -0,0 +1,89 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+
+import static com.example.imageeditor.service.SyntheticCollages.pixels;
+import static com.example.imageeditor.service.SyntheticCollages.randomCollage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CollageRendererTests {
+
+    private static final RenderMetrics METRICS = SyntheticCollages.metrics();
+
+    @TempDir
+    Path tempDir;
+
+    private final CollageRenderer renderer = SyntheticCollages.renderer(SyntheticCollages::syntheticImage, METRICS);
+
+    @AfterEach
+    void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Test
+    void tiledRenderIsPixelIdenticalToSequential() throws Exception {
+        Collage collage = randomCollage(42, 600);
+
+        BufferedImage sequential = renderer.render(collage, CollageRenderer.RenderMode.SEQUENTIAL);
+        BufferedImage tiled = renderer.render(collage, CollageRenderer.RenderMode.TILED);
+
+        assertArrayEquals(pixels(sequential), pixels(tiled));
+    }
+
+    @Test
+    void opaqueRenderMatchesArgbRenderFlattenedOnWhite() throws Exception {
+        Collage collage = randomCollage(42, 600);
+
+        BufferedImage argb = renderer.render(collage, CollageRenderer.RenderMode.TILED, false);
+        BufferedImage opaque = renderer.render(collage, CollageRenderer.RenderMode.TILED, true);
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, opaque.getType());
+
+        BufferedImage flattened = new BufferedImage(argb.getWidth(), argb.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = flattened.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, argb.getWidth(), argb.getHeight());
+        g2d.drawImage(argb, 0, 0, null);
+        g2d.dispose();
+
+        int[] expected = pixels(flattened);
+        int[] actual = pixels(opaque);
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int difference = Math.abs(((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF));
+                assertTrue(difference <= 2, "pixel " + i + " differs by " + difference);
+            }
+        }
+    }
+
+    @Test
+    void mappedBandedRenderMatchesHeapRender() throws Exception {
+        Collage collage = randomCollage(42, 600);
+        CollageRenderer mappedRenderer = SyntheticCollages.renderer(SyntheticCollages::syntheticImage,
+                new CanvasAllocator(0, 100, tempDir.toString()), METRICS);
+        try {
+            for (boolean opaque : new boolean[]{false, true}) {
+                BufferedImage heap = renderer.render(collage, CollageRenderer.RenderMode.SEQUENTIAL, opaque);
+                BufferedImage mapped = mappedRenderer.render(collage, CollageRenderer.RenderMode.SEQUENTIAL, opaque);
+
+                assertTrue(mapped.getRaster().getDataBuffer() instanceof CanvasAllocator.MappedDataBuffer);
+                assertArrayEquals(pixels(heap), pixels(mapped));
+
+                String format = opaque ? "jpg" : "png";
+                assertTrue(ImageIO.write(mapped, format, tempDir.resolve("poster." + format).toFile()));
+            }
+        } finally {
+            mappedRenderer.shutdown();
+        }
+    }
+}
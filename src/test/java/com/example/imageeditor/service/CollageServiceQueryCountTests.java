@@ -0,0 +1,121 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerGroup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.example.imageeditor.domain.PersistedCollages.collage;
+import static com.example.imageeditor.domain.PersistedCollages.collageWithLayers;
+import static com.example.imageeditor.domain.PersistedCollages.image;
+import static com.example.imageeditor.domain.PersistedCollages.imageLayer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "collage.render.cache.dir=target/render-cache"
+})
+@Import({CollageService.class, ImageService.class, CollageRenderer.class,
+        DecodedImageCache.class, TransformedLayerCache.class, GroupRasterCache.class,
+        ImageRenditionGenerator.class,
+        RenderedCollageCache.class, CanvasAllocator.class, RenderMetrics.class, SimpleMeterRegistry.class,
+        RenderAdmissionController.class, UndoHistory.class})
+class CollageServiceQueryCountTests {
+
+    @Autowired
+    private CollageService collageService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void loadingCollageForRenderUsesConstantNumberOfQueries() {
+        Long collageId = collageWithLayers(entityManager, 50);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Collage collage = collageService.findCollageWithLayers(collageId);
+        List<ImageLayer> imageLayers = new ArrayList<>();
+        collage.getLayers().forEach(component -> component.collectImageLayers(imageLayers));
+        imageLayers.forEach(layer -> layer.getImage().getRenditions().size());
+
+        assertEquals(50, imageLayers.size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void batchUpdateLoadsLayersInOneQuery() {
+        Long collageId = collageWithLayers(entityManager, 20);
+        List<ImageLayer> layers = new ArrayList<>();
+        collageService.findCollageWithLayers(collageId).getLayers()
+                .forEach(component -> component.collectImageLayers(layers));
+        List<CollageService.LayerBatchUpdateDTO> updates = new ArrayList<>();
+        for (ImageLayer layer : layers) {
+            CollageService.LayerBatchUpdateDTO update = new CollageService.LayerBatchUpdateDTO();
+            update.layerId = layer.getId();
+            update.positionX = 10;
+            update.width = 50;
+            updates.add(update);
+        }
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<ImageLayer> changed = collageService.updateImageLayers(collageId, updates);
+
+        assertEquals(20, changed.size());
+        assertEquals(1, statistics.getQueryExecutionCount());
+    }
+
+    @Test
+    void groupedCollageRendersOnAWorkerThreadWithoutASession() throws Exception {
+        Collage collage = collage(entityManager);
+        LayerGroup group = new LayerGroup();
+        group.setCollage(collage);
+        for (int i = 0; i < 3; i++) {
+            ImageLayer child = imageLayer(image(entityManager, collage.getUser(), i), i);
+            child.setPositionX(i * 120);
+            group.add(child);
+        }
+        entityManager.persist(group);
+        entityManager.flush();
+        entityManager.clear();
+
+        Collage loaded = collageService.findCollageWithLayers(collage.getId());
+        entityManager.clear();
+
+        CollageRenderer renderer = SyntheticCollages.renderer(
+                layer -> new BufferedImage(layer.getImage().getRenditions().get(0).getWidth(), layer.getHeight(),
+                        BufferedImage.TYPE_INT_ARGB),
+                SyntheticCollages.metrics());
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            BufferedImage canvas = worker.submit(() -> renderer.render(loaded, CollageRenderer.RenderMode.TILED))
+                    .get();
+            assertEquals(1000, canvas.getWidth());
+        } finally {
+            worker.shutdown();
+            renderer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.example.imageeditor.domain.PersistedCollages.collageWithLayers;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "collage.render.cache.dir=target/render-cache"
+})
+@Import({CollageService.class, ImageService.class, CollageRenderer.class,
+        DecodedImageCache.class, TransformedLayerCache.class, GroupRasterCache.class,
+        ImageRenditionGenerator.class,
+        RenderedCollageCache.class, CanvasAllocator.class, RenderMetrics.class, SimpleMeterRegistry.class,
+        RenderAdmissionController.class, UndoHistory.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CollageServiceRevisionTests {
+
+    private static final int EDITORS = 8;
+    private static final int EDITS_PER_EDITOR = 5;
+
+    @Autowired
+    private CollageService collageService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentEditsEachGetTheirOwnRevision() throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Long collageId = transaction.execute(status -> collageWithLayers(entityManager, EDITORS));
+        List<ImageLayer> layers = new ArrayList<>();
+        transaction.executeWithoutResult(status -> collageService.findCollageWithLayers(collageId).getLayers()
+                .forEach(component -> component.collectImageLayers(layers)));
+
+        ExecutorService editors = Executors.newFixedThreadPool(EDITORS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (ImageLayer layer : layers) {
+                results.add(editors.submit(() -> {
+                    start.await();
+                    for (int i = 1; i <= EDITS_PER_EDITOR; i++) {
+                        CollageService.LayerUpdateDTO move = new CollageService.LayerUpdateDTO();
+                        move.positionX = i;
+                        collageService.updateImageLayer(layer.getId(), move);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            editors.shutdown();
+        }
+
+        assertEquals(EDITORS * EDITS_PER_EDITOR, collageService.findRevision(collageId));
+    }
+}
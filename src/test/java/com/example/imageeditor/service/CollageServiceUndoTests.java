@@ -0,0 +1,131 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerGroup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.imageeditor.domain.PersistedCollages.collage;
+import static com.example.imageeditor.domain.PersistedCollages.collageWithLayers;
+import static com.example.imageeditor.domain.PersistedCollages.image;
+import static com.example.imageeditor.domain.PersistedCollages.imageLayer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "collage.render.cache.dir=target/render-cache"
+})
+@Import({CollageService.class, ImageService.class, CollageRenderer.class,
+        DecodedImageCache.class, TransformedLayerCache.class, GroupRasterCache.class,
+        ImageRenditionGenerator.class,
+        RenderedCollageCache.class, CanvasAllocator.class, RenderMetrics.class, SimpleMeterRegistry.class,
+        RenderAdmissionController.class, UndoHistory.class})
+class CollageServiceUndoTests {
+
+    @Autowired
+    private CollageService collageService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void batchUpdateUndoesAsOneStep() {
+        Long collageId = collageWithLayers(entityManager, 20);
+        List<CollageService.LayerBatchUpdateDTO> updates = new ArrayList<>();
+        for (ImageLayer layer : imageLayers(collageId)) {
+            CollageService.LayerBatchUpdateDTO update = new CollageService.LayerBatchUpdateDTO();
+            update.layerId = layer.getId();
+            update.positionX = 10;
+            update.width = 50;
+            updates.add(update);
+        }
+        entityManager.clear();
+
+        collageService.updateImageLayers(collageId, updates);
+        entityManager.flush();
+        entityManager.clear();
+
+        collageService.undo(collageId);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertTrue(imageLayers(collageId).stream()
+                .allMatch(layer -> layer.getPositionX() == 0 && layer.getWidth() == 100));
+    }
+
+    @Test
+    void undoSkipsStepsWhoseLayersWereDeleted() {
+        Long collageId = collageWithLayers(entityManager, 2);
+        List<ImageLayer> layers = imageLayers(collageId);
+        Long keptId = layers.get(0).getId();
+        Long deletedId = layers.get(1).getId();
+        entityManager.clear();
+
+        CollageService.LayerUpdateDTO move = new CollageService.LayerUpdateDTO();
+        move.positionX = 40;
+        collageService.updateImageLayer(keptId, move);
+        collageService.updateImageLayer(deletedId, move);
+        collageService.updateLayerAction(deletedId, "delete");
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(keptId, collageService.undo(collageId).getId());
+        assertNull(collageService.undo(collageId));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(0, entityManager.find(ImageLayer.class, keptId).getPositionX());
+        assertEquals(keptId, collageService.redo(collageId).getId());
+    }
+
+    @Test
+    void groupTransformAndItsLayersUndoAndRedoAsOneStep() {
+        Collage collage = collage(entityManager);
+        LayerGroup group = new LayerGroup();
+        group.setCollage(collage);
+        for (int i = 0; i < 2; i++) {
+            ImageLayer child = imageLayer(image(entityManager, collage.getUser(), i), i);
+            child.setPositionX(i * 150);
+            group.add(child);
+        }
+        entityManager.persist(group);
+        entityManager.flush();
+        entityManager.clear();
+        Long groupId = group.getId();
+
+        collageService.updateLayerAction(groupId, "rotate_right");
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(90.0, entityManager.find(LayerGroup.class, groupId).getRotationAngle());
+
+        assertEquals(groupId, collageService.undo(collage.getId()).getId());
+        entityManager.flush();
+        entityManager.clear();
+        LayerGroup undone = entityManager.find(LayerGroup.class, groupId);
+        assertEquals(0.0, undone.getRotationAngle());
+        assertEquals(List.of(0, 150), undone.getChildren().stream().map(ImageLayer.class::cast)
+                .map(ImageLayer::getPositionX).toList());
+
+        collageService.redo(collage.getId());
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(90.0, entityManager.find(LayerGroup.class, groupId).getRotationAngle());
+    }
+
+    private List<ImageLayer> imageLayers(Long collageId) {
+        List<ImageLayer> layers = new ArrayList<>();
+        collageService.findCollageWithLayers(collageId).getLayers()
+                .forEach(component -> component.collectImageLayers(layers));
+        return layers;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.domain.LayerGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.imageeditor.service.SyntheticCollages.pixels;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class GroupRasterCacheTests {
+
+    private final AtomicInteger layerImages = new AtomicInteger();
+    private final GroupRasterCache groupRasterCache = new GroupRasterCache(Long.MAX_VALUE);
+    private final LayerImageSource images = new LayerImageSource() {
+        @Override
+        public BufferedImage imageFor(ImageLayer layer) {
+            layerImages.incrementAndGet();
+            return solidImage(layer);
+        }
+
+        @Override
+        public BufferedImage groupImageFor(LayerGroup group) throws IOException {
+            return groupRasterCache.get(group, () -> group.flatten(this));
+        }
+    };
+    private final CollageRenderer renderer = SyntheticCollages.renderer(images, SyntheticCollages.metrics());
+
+    @AfterEach
+    void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Test
+    void groupRasterIsReusedUntilANestedLayerChanges() throws Exception {
+        LayerGroup inner = group(layer(1, 40, 40, 60, 60), layer(2, 80, 10, 50, 90));
+        LayerGroup outer = group(layer(3, 0, 0, 100, 50), inner);
+        Collage collage = collage(outer);
+
+        renderer.render(collage, CollageRenderer.RenderMode.SEQUENTIAL);
+        assertEquals(3, layerImages.get());
+        renderer.render(collage, CollageRenderer.RenderMode.SEQUENTIAL);
+        assertEquals(3, layerImages.get());
+
+        GroupRasterCache.Key before = GroupRasterCache.Key.of(outer);
+        ((ImageLayer) inner.getChildren().get(0)).setWidth(70);
+        assertNotEquals(before, GroupRasterCache.Key.of(outer));
+
+        renderer.render(collage, CollageRenderer.RenderMode.SEQUENTIAL);
+        assertEquals(6, layerImages.get());
+        assertEquals(GroupRasterCache.Key.of(outer), GroupRasterCache.Key.of((LayerGroup) outer.clone()));
+    }
+
+    @Test
+    void groupOffsetMovesItsChildrenAsAUnit() throws Exception {
+        LayerGroup group = group(layer(1, 10, 20, 80, 60), layer(2, 50, 50, 70, 40));
+        group.setPositionX(130);
+        group.setPositionY(45);
+        Collage grouped = collage(group);
+        Collage flat = collage(layer(1, 140, 65, 80, 60), layer(2, 180, 95, 70, 40));
+
+        assertArrayEquals(pixels(renderer.render(flat, CollageRenderer.RenderMode.SEQUENTIAL)),
+                pixels(renderer.render(grouped, CollageRenderer.RenderMode.TILED)));
+    }
+
+    private static Collage collage(LayerComponent... components) {
+        Collage collage = new Collage();
+        collage.setId(1L);
+        collage.setCanvasWidth(600);
+        collage.setCanvasHeight(400);
+        for (LayerComponent component : components) {
+            collage.getLayers().add(component);
+        }
+        return collage;
+    }
+
+    private static LayerGroup group(LayerComponent... children) {
+        LayerGroup group = new LayerGroup();
+        for (LayerComponent child : children) {
+            group.add(child);
+        }
+        return group;
+    }
+
+    private static ImageLayer layer(long imageId, int x, int y, int width, int height) {
+        ImageLayer layer = new ImageLayer();
+        Image image = new Image();
+        image.setId(imageId);
+        layer.setImage(image);
+        layer.setPositionX(x);
+        layer.setPositionY(y);
+        layer.setWidth(width);
+        layer.setHeight(height);
+        return layer;
+    }
+
+    private static BufferedImage solidImage(ImageLayer layer) {
+        BufferedImage image = new BufferedImage(layer.getBounds().width, layer.getBounds().height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(new Color(0x40 * layer.getImage().getId().intValue(), 0x80, 0xC0, 0xC0));
+        g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2d.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageRendition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageRenditionGeneratorTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final ImageRenditionGenerator generator = new ImageRenditionGenerator(new int[]{256, 512, 1024, 2048});
+
+    @Test
+    void sourceBelowTwiceTheLargestEdgeIsStillDecodedSubsampled() throws Exception {
+        Path original = tempDir.resolve("photo.jpg");
+        BufferedImage pixels = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = pixels.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.ORANGE, 3000, 2000, Color.DARK_GRAY));
+        g2d.fillRect(0, 0, 3000, 2000);
+        g2d.dispose();
+        ImageIO.write(pixels, "jpg", original.toFile());
+
+        List<ImageRendition> renditions = generator.generate(original, 3000, 2000);
+
+        assertEquals(List.of(256, 512, 1024, 1500), renditions.stream().map(ImageRendition::getLongEdge).toList());
+        ImageRendition largest = renditions.get(renditions.size() - 1);
+        assertEquals(1500, largest.getWidth());
+        assertEquals(1000, largest.getHeight());
+        for (ImageRendition rendition : renditions) {
+            BufferedImage written = ImageIO.read(original.resolveSibling(rendition.getFileName()).toFile());
+            assertEquals(rendition.getWidth(), written.getWidth());
+            assertEquals(rendition.getHeight(), written.getHeight());
+        }
+    }
+
+    @Test
+    void renditionThatWouldDuplicateTheNextSmallerOneIsSkipped() throws Exception {
+        Path original = tempDir.resolve("wide.png");
+        ImageIO.write(new BufferedImage(2049, 600, BufferedImage.TYPE_INT_ARGB), "png", original.toFile());
+
+        List<ImageRendition> renditions = generator.generate(original, 2049, 600);
+
+        assertEquals(List.of(256, 512, 1024), renditions.stream().map(ImageRendition::getLongEdge).toList());
+        assertTrue(renditions.stream().allMatch(r -> Files.exists(original.resolveSibling(r.getFileName()))));
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.ImageLayer;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LayerIndexServiceTests {
+
+    @Test
+    void layersAreLoadedOnlyWhenTheRevisionChanges() {
+        Collage collage = new Collage();
+        collage.setId(5L);
+        collage.setCanvasWidth(500);
+        collage.setCanvasHeight(500);
+        ImageLayer layer = new ImageLayer();
+        layer.setWidth(100);
+        layer.setHeight(100);
+        collage.getLayers().add(layer);
+
+        CollageService collageService = mock(CollageService.class);
+        when(collageService.findRevision(5L)).thenReturn(0L);
+        when(collageService.loadCollageForRender(5L)).thenReturn(collage);
+        LayerIndexService layerIndexService = new LayerIndexService(collageService, 16);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(layerIndexService.hitTest(5L, 50, 50).isPresent());
+        }
+        assertEquals(1, layerIndexService.layersIn(5L, new Rectangle(0, 0, 10, 10)).size());
+        verify(collageService, times(1)).loadCollageForRender(5L);
+
+        collage.markModified();
+        when(collageService.findRevision(5L)).thenReturn(collage.getRevision());
+        layerIndexService.hitTest(5L, 50, 50);
+        verify(collageService, times(2)).loadCollageForRender(5L);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerComponent;
+import com.example.imageeditor.domain.LayerGroup;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayerSpatialIndexTests {
+
+    @Test
+    void regionQueriesMatchALinearScanInPaintOrder() {
+        List<LayerComponent> components = randomComponents(new Random(3), 400);
+        LayerSpatialIndex index = LayerSpatialIndex.build(components, 4000, 3000);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            Rectangle region = new Rectangle(random.nextInt(4400) - 200, random.nextInt(3400) - 200,
+                    1 + random.nextInt(800), 1 + random.nextInt(800));
+
+            List<ImageLayer> expectedLayers = new ArrayList<>();
+            List<LayerComponent> expectedComponents = new ArrayList<>();
+            for (LayerComponent component : components) {
+                List<ImageLayer> leaves = new ArrayList<>();
+                component.collectImageLayers(leaves);
+                List<ImageLayer> hits = leaves.stream().filter(layer -> layer.getBounds().intersects(region)).toList();
+                expectedLayers.addAll(hits);
+                if (!hits.isEmpty()) {
+                    expectedComponents.add(component);
+                }
+            }
+
+            assertEquals(expectedLayers, index.layersIn(region));
+            assertEquals(expectedComponents, index.componentsIn(region));
+        }
+    }
+
+    @Test
+    void hitTestReturnsTopmostLayerHonouringRotation() {
+        ImageLayer bottom = layer(1, 0, 0, 200, 200, 0);
+        ImageLayer rotated = layer(2, 50, 50, 100, 100, 45);
+        LayerSpatialIndex index = LayerSpatialIndex.build(List.of(bottom, rotated), 500, 500);
+
+        Rectangle rotatedBounds = rotated.getBounds();
+        assertSame(rotated, index.hitTest((int) rotatedBounds.getCenterX(), (int) rotatedBounds.getCenterY())
+                .orElseThrow());
+        assertSame(bottom, index.hitTest(rotatedBounds.x + 2, rotatedBounds.y + 2).orElseThrow());
+        assertTrue(index.hitTest(400, 400).isEmpty());
+    }
+
+    @Test
+    void hitTestFollowsTheTransformOfEnclosingGroups() {
+        ImageLayer child = layer(1, 0, 0, 200, 20, 0);
+        LayerGroup group = new LayerGroup();
+        group.add(child);
+        group.setPositionX(100);
+        group.setPositionY(100);
+        group.setRotationAngle(90);
+        LayerSpatialIndex index = LayerSpatialIndex.build(List.of(group), 500, 500);
+
+        assertEquals(new Rectangle(100, 100, 20, 200), group.getBounds());
+        assertSame(child, index.hitTest(110, 290).orElseThrow());
+        assertTrue(index.hitTest(150, 105).isEmpty());
+        assertEquals(List.of(child), index.layersIn(new Rectangle(105, 250, 5, 5)));
+    }
+
+    static List<LayerComponent> randomComponents(Random random, int count) {
+        List<LayerComponent> components = new ArrayList<>();
+        long id = 0;
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 0) {
+                LayerGroup group = new LayerGroup();
+                group.setId(id++);
+                for (int j = 0; j < 3; j++) {
+                    group.add(randomLayer(random, id++));
+                }
+                components.add(group);
+            } else {
+                components.add(randomLayer(random, id++));
+            }
+        }
+        return components;
+    }
+
+    private static ImageLayer randomLayer(Random random, long id) {
+        return layer(id, random.nextInt(4400) - 200, random.nextInt(3400) - 200,
+                10 + random.nextInt(400), 10 + random.nextInt(400), random.nextInt(8) * 45);
+    }
+
+    private static ImageLayer layer(long id, int x, int y, int width, int height, double rotationAngle) {
+        ImageLayer layer = new ImageLayer();
+        layer.setId(id);
+        layer.setPositionX(x);
+        layer.setPositionY(y);
+        layer.setWidth(width);
+        layer.setHeight(height);
+        layer.setRotationAngle(rotationAngle);
+        return layer;
+    }
+}
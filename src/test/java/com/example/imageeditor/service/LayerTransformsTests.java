@@ -0,0 +1,117 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayer;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayerTransformsTests {
+
+    @ParameterizedTest
+    @CsvSource({
+            "800, 600, 400, 300, 0",
+            "800, 600, 400, 300, 90",
+            "800, 600, 250, 410, 180",
+            "300, 200, 600, 500, 270",
+            "800, 600, 500, 350, 30",
+            "640, 640, 320, 200, -45"
+    })
+    void fusedTransformMatchesTwoPassTransform(int sourceWidth, int sourceHeight,
+                                               int width, int height, double angle) {
+        BufferedImage source = syntheticImage(sourceWidth, sourceHeight);
+        ImageLayer layer = new ImageLayer();
+        layer.setWidth(width);
+        layer.setHeight(height);
+        layer.setRotationAngle(angle);
+        Rectangle bounds = layer.getBounds();
+
+        BufferedImage expected = twoPassTransform(source, width, height, angle, bounds);
+        BufferedImage actual = LayerTransforms.scaleAndRotate(source, width, height, angle, bounds);
+
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        double difference = meanChannelDifference(expected, actual);
+        assertTrue(difference < 1.0, "mean channel difference " + difference);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"90", "180", "270", "-90", "450"})
+    void quarterTurnMatchesAffineRotationExactly(double angle) {
+        BufferedImage source = syntheticImage(301, 173);
+        ImageLayer layer = new ImageLayer();
+        layer.setWidth(source.getWidth());
+        layer.setHeight(source.getHeight());
+        layer.setRotationAngle(angle);
+        Rectangle bounds = layer.getBounds();
+
+        BufferedImage expected = LayerTransforms.scaleAndRotateAffine(source, source.getWidth(), source.getHeight(),
+                angle, bounds);
+        BufferedImage actual = LayerTransforms.scaleAndRotate(source, source.getWidth(), source.getHeight(),
+                angle, bounds);
+
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    /** Попередня реалізація: окремий прохід масштабування і окремий прохід повороту. */
+    private static BufferedImage twoPassTransform(BufferedImage source, int width, int height,
+                                                  double angle, Rectangle bounds) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = scaled.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(source, 0, 0, width, height, null);
+        g2d.dispose();
+        if (angle == 0.0) {
+            return scaled;
+        }
+
+        BufferedImage rotated = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = rotated.createGraphics();
+        g2.translate((bounds.width - width) / 2.0, (bounds.height - height) / 2.0);
+        g2.rotate(Math.toRadians(angle), width / 2.0, height / 2.0);
+        g2.drawRenderedImage(scaled, null);
+        g2.dispose();
+        return rotated;
+    }
+
+    private static BufferedImage syntheticImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.RED, width, height, Color.BLUE));
+        g2d.fillRect(0, 0, width, height);
+        g2d.setColor(new Color(40, 200, 90, 180));
+        g2d.fillOval(width / 4, height / 4, width / 2, height / 2);
+        g2d.dispose();
+        return image;
+    }
+
+    private static double meanChannelDifference(BufferedImage expected, BufferedImage actual) {
+        long total = 0;
+        long samples = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    total += Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF));
+                    samples++;
+                }
+            }
+        }
+        return (double) total / samples;
+    }
+}
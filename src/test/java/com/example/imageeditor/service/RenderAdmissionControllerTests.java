@@ -0,0 +1,88 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.ImageLayer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderAdmissionControllerTests {
+
+    private static final long MB = 1L << 20;
+
+    private final CanvasAllocator canvasAllocator = new CanvasAllocator(Long.MAX_VALUE, 512, "");
+
+    @Test
+    void costCoversCanvasLayerAndBoundedDecodedSource() {
+        RenderAdmissionController admission = admission(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        // полотно 1000x1000, шар 1000x1000, джерело 4000x4000 обмежене чотирма площами шару
+        assertEquals(4_000_000L + (1_000_000L + 4_000_000L) * 4, admission.estimateCost(collage(1000, 1000, 4000)));
+    }
+
+    @Test
+    void rejectsOversizedCanvasAndOverBudgetCollage() {
+        RenderAdmissionController admission = admission(500_000, 16 * MB, Long.MAX_VALUE);
+
+        RenderRejectedException tooLarge = assertThrows(RenderRejectedException.class,
+                () -> admission.admit(collage(1000, 1000, 100)));
+        assertFalse(tooLarge.isRetryable());
+
+        RenderRejectedException tooHeavy = assertThrows(RenderRejectedException.class,
+                () -> admission.admit(collage(700, 1000, 4000)));
+        assertFalse(tooHeavy.isRetryable());
+
+        assertSame(RenderAdmissionController.Permit.NONE, admission.admit(collage(100, 100, 100)));
+    }
+
+    @Test
+    void rejectsLayerTransformLargerThanTheCanvasLimit() {
+        RenderAdmissionController admission = admission(500_000, Long.MAX_VALUE, Long.MAX_VALUE);
+        ImageLayer layer = (ImageLayer) collage(100, 100, 100).getLayers().get(0);
+        assertSame(RenderAdmissionController.Permit.NONE, admission.admit(layer));
+
+        layer.setWidth(50_000);
+        assertFalse(assertThrows(RenderRejectedException.class, () -> admission.admit(layer)).isRetryable());
+    }
+
+    @Test
+    void heavyRendersQueueBehindTheGlobalLimit() {
+        RenderAdmissionController admission = admission(Long.MAX_VALUE, Long.MAX_VALUE, MB);
+        Collage heavy = collage(1000, 1000, 1000);
+
+        RenderAdmissionController.Permit first = admission.admit(heavy);
+        RenderRejectedException busy = assertThrows(RenderRejectedException.class, () -> admission.admit(heavy));
+        assertTrue(busy.isRetryable());
+
+        first.close();
+        admission.admit(heavy).close();
+    }
+
+    private RenderAdmissionController admission(long maxCanvasPixels, long maxCostBytes, long heavyCostBytes) {
+        return new RenderAdmissionController(canvasAllocator, maxCanvasPixels, maxCostBytes, heavyCostBytes,
+                1, Duration.ofMillis(50));
+    }
+
+    private static Collage collage(int canvasSize, int layerSize, int sourceSize) {
+        Collage collage = new Collage();
+        collage.setCanvasWidth(canvasSize);
+        collage.setCanvasHeight(canvasSize);
+
+        Image image = new Image();
+        image.setWidth(sourceSize);
+        image.setHeight(sourceSize);
+        ImageLayer layer = new ImageLayer();
+        layer.setImage(image);
+        layer.setWidth(layerSize);
+        layer.setHeight(layerSize);
+        collage.getLayers().add(layer);
+        return collage;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.ImageLayer;
+import com.example.imageeditor.domain.LayerGroup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RenderMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RenderMetrics metrics = new RenderMetrics(registry);
+    private final CollageRenderer renderer = SyntheticCollages.singleThreadedRenderer(
+            layer -> metrics.timeTransform(layer, () -> new BufferedImage(layer.getWidth(), layer.getHeight(),
+                    BufferedImage.TYPE_INT_ARGB)),
+            metrics);
+    private final CollageService collageService = SyntheticCollages.exportService(renderer, metrics);
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Test
+    void recordsStagesOfCollageExport() throws Exception {
+        Collage collage = new Collage();
+        collage.setCanvasWidth(300);
+        collage.setCanvasHeight(200);
+        LayerGroup group = new LayerGroup();
+        group.getChildren().add(layer(1));
+        group.getChildren().add(layer(2));
+        collage.getLayers().add(layer(3));
+        collage.getLayers().add(group);
+
+        Path target = tempDir.resolve("collage.jpg");
+        collageService.writeCollage(collage, "jpg", target);
+
+        assertEquals(3, registry.get("imageeditor.layer.transform").tag("layer.type", "ImageLayer").timer().count());
+        assertEquals(1, registry.get("imageeditor.collage.composite").tag("mode", "sequential").timer().count());
+        assertEquals(1, registry.get("imageeditor.collage.encode").tag("format", "jpg").timer().count());
+        assertEquals(Files.size(target), registry.get("imageeditor.collage.encode.bytes")
+                .tag("format", "jpg").summary().totalAmount());
+        assertEquals(60000, registry.get("imageeditor.collage.canvas.pixels").summary().totalAmount());
+        assertEquals(3, registry.get("imageeditor.collage.layers").tag("layer.type", "ImageLayer")
+                .summary().totalAmount());
+        assertEquals(1, registry.get("imageeditor.collage.layers").tag("layer.type", "LayerGroup")
+                .summary().totalAmount());
+    }
+
+    @Test
+    void sourceFormatTagIsLimitedToKnownFormats() throws Exception {
+        for (String format : new String[]{"PNG", "jpg", "jpeg", "holiday-photo", "x.tiff", null}) {
+            metrics.timeDecode(format, () -> null);
+            metrics.recordStore(format, 1);
+        }
+
+        assertEquals(Set.of("png", "jpeg", "other"), registry.find("imageeditor.image.decode").timers().stream()
+                .map(timer -> timer.getId().getTag("format"))
+                .collect(Collectors.toSet()));
+        assertEquals(3, registry.find("imageeditor.image.store").timers().size());
+        assertEquals(3, registry.get("imageeditor.image.store").tag("format", "other").timer().count());
+    }
+
+    private static ImageLayer layer(long id) {
+        ImageLayer layer = new ImageLayer();
+        Image image = new Image();
+        image.setId(id);
+        layer.setImage(image);
+        layer.setWidth(50);
+        layer.setHeight(40);
+        return layer;
+    }
+}
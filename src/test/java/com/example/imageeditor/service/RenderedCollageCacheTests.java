@@ -0,0 +1,30 @@
+package com.example.imageeditor.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderedCollageCacheTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void pinnedFileSurvivesEvictionAndNewRevisionsUntilUnpinned() throws Exception {
+        RenderedCollageCache cache = new RenderedCollageCache(tempDir.toString(), 150);
+        Path pinned = cache.getOrCreatePinned(1L, 1, "png", target -> Files.write(target, new byte[100]));
+
+        cache.getOrCreate(1L, 2, "png", target -> Files.write(target, new byte[100]));
+        cache.getOrCreate(2L, 1, "png", target -> Files.write(target, new byte[100]));
+        assertTrue(Files.exists(pinned));
+
+        cache.unpin(pinned);
+        assertFalse(Files.exists(pinned));
+        assertTrue(cache.find(1L, 1, "png").isEmpty());
+    }
+}
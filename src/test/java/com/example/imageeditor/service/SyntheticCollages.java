@@ -0,0 +1,95 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.Collage;
+import com.example.imageeditor.domain.Image;
+import com.example.imageeditor.domain.ImageLayer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Колажі з випадковими шарами для тестів рендерингу: зображення шарів малюються в пам'яті,
+ * без файлів і бази даних. Тут же зібрано рендерери й сервіси для таких тестів, щоб зміна
+ * конструктора правилася в одному місці.
+ */
+final class SyntheticCollages {
+
+    private SyntheticCollages() {
+    }
+
+    /** 25 шарів зі сторонами від 50 до {@code 50 + maxEdge} пікселів, частково за межами полотна 1500x1100. */
+    static Collage randomCollage(long seed, int maxEdge) {
+        Collage collage = new Collage();
+        collage.setId(1L);
+        collage.setName("synthetic");
+        collage.setCanvasWidth(1500);
+        collage.setCanvasHeight(1100);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < 25; i++) {
+            ImageLayer layer = new ImageLayer();
+            layer.setId((long) i);
+            Image image = new Image();
+            image.setId((long) i);
+            layer.setImage(image);
+            layer.setWidth(50 + random.nextInt(maxEdge));
+            layer.setHeight(50 + random.nextInt(maxEdge));
+            layer.setPositionX(random.nextInt(1600) - 100);
+            layer.setPositionY(random.nextInt(1200) - 100);
+            layer.setRotationAngle(random.nextInt(4) * 90);
+            layer.setZIndex(i);
+            collage.getLayers().add(layer);
+        }
+        return collage;
+    }
+
+    /** Детерміноване зображення шару розміром з його межі: напівпрозорі еліпси, залежні від id зображення. */
+    static BufferedImage syntheticImage(ImageLayer layer) {
+        Random random = new Random(layer.getImage().getId());
+        BufferedImage image = new BufferedImage(layer.getBounds().width, layer.getBounds().height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        for (int i = 0; i < 20; i++) {
+            g2d.setColor(new Color(random.nextInt(), true));
+            g2d.fillOval(random.nextInt(image.getWidth()), random.nextInt(image.getHeight()),
+                    random.nextInt(200) + 1, random.nextInt(200) + 1);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    static RenderMetrics metrics() {
+        return new RenderMetrics(new SimpleMeterRegistry());
+    }
+
+    /** Рендерер без обмеження пам'яті полотна з дрібними плитками й кількома потоками підготовки. */
+    static CollageRenderer renderer(LayerImageSource images, RenderMetrics metrics) {
+        return renderer(images, new CanvasAllocator(Long.MAX_VALUE, 512, ""), metrics);
+    }
+
+    static CollageRenderer renderer(LayerImageSource images, CanvasAllocator canvasAllocator, RenderMetrics metrics) {
+        return new CollageRenderer(images, canvasAllocator, metrics, "sequential", 256, 4, 4, 2);
+    }
+
+    /** Рендерер, що готує шари в одному потоці: усі виділення пам'яті й виміри лишаються передбачуваними. */
+    static CollageRenderer singleThreadedRenderer(LayerImageSource images, RenderMetrics metrics) {
+        return new CollageRenderer(images, new CanvasAllocator(Long.MAX_VALUE, 512, ""), metrics,
+                "sequential", 1024, 1, 1, 1);
+    }
+
+    /** Сервіс лише для рендерингу й кодування: без бази даних, кешу результатів і обмежень допуску. */
+    static CollageService exportService(CollageRenderer renderer, RenderMetrics metrics) {
+        RenderAdmissionController unlimited = new RenderAdmissionController(
+                new CanvasAllocator(Long.MAX_VALUE, 512, ""), Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE,
+                1, Duration.ZERO);
+        return new CollageService(null, null, null, renderer, null, null, metrics, unlimited, null);
+    }
+
+    static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayerMemento;
+import com.example.imageeditor.domain.UndoStep;
+import com.example.imageeditor.domain.UndoStep.Direction;
+import com.example.imageeditor.repository.UndoStepRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "collage.undo.store=database",
+        "collage.undo.max-steps=2"
+})
+@Import(UndoHistory.class)
+class UndoHistoryDatabaseTests {
+
+    @Autowired
+    private UndoHistory undoHistory;
+
+    @Autowired
+    private UndoStepRepository undoStepRepository;
+
+    @Test
+    void stepsArePersistedCappedAndSharedThroughTheTable() {
+        for (int i = 0; i < 4; i++) {
+            undoHistory.record(10L, List.of(memento(i)));
+        }
+        undoHistory.push(10L, Direction.REDO, List.of(memento(99)));
+        undoHistory.record(11L, List.of(memento(50)));
+
+        assertEquals(0, undoHistory.retainedBytes());
+        assertEquals(4, undoStepRepository.count());
+
+        undoHistory.record(10L, List.of(memento(4)));
+        List<UndoStep> steps = undoStepRepository.findAll();
+        assertTrue(steps.stream().noneMatch(step -> step.getDirection() == Direction.REDO));
+
+        assertEquals(4, undoHistory.pop(10L, Direction.UNDO).orElseThrow().get(0).positionX());
+        assertEquals(3, undoHistory.pop(10L, Direction.UNDO).orElseThrow().get(0).positionX());
+        assertTrue(undoHistory.pop(10L, Direction.UNDO).isEmpty());
+
+        undoHistory.clear(11L);
+        assertEquals(0, undoStepRepository.count());
+    }
+
+    private static ImageLayerMemento memento(int positionX) {
+        return new ImageLayerMemento(1L, positionX, 0, 100, 100, 0.0, null, null, null, null);
+    }
+}
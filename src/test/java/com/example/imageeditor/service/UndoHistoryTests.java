@@ -0,0 +1,72 @@
+package com.example.imageeditor.service;
+
+import com.example.imageeditor.domain.ImageLayerMemento;
+import com.example.imageeditor.domain.UndoStep.Direction;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UndoHistoryTests {
+
+    @Test
+    void stepsRoundTripThroughPackedEncoding() {
+        List<ImageLayerMemento> step = List.of(
+                new ImageLayerMemento(7L, -10, 20, 300, 200, 37.5, null, null, null, null),
+                new ImageLayerMemento(Long.MAX_VALUE, 0, 0, 1, 1, -90.0, 5, null, 40, 0));
+
+        byte[] packed = UndoHistory.encode(step);
+
+        assertEquals(step, UndoHistory.decode(packed));
+        assertEquals(2 + 2 * 33 + 3 * 4, packed.length);
+    }
+
+    @Test
+    void historyIsCappedAndNewEditClearsRedo() {
+        UndoHistory history = new UndoHistory(null, "memory", 3, Long.MAX_VALUE, Duration.ofHours(1));
+        for (int i = 0; i < 5; i++) {
+            history.record(1L, List.of(memento(i)));
+        }
+
+        assertEquals(3 * (2 + 33), history.retainedBytes(1L));
+        assertEquals(4, history.pop(1L, Direction.UNDO).orElseThrow().get(0).positionX());
+        history.push(1L, Direction.REDO, List.of(memento(100)));
+
+        history.record(1L, List.of(memento(5)));
+
+        assertTrue(history.pop(1L, Direction.REDO).isEmpty());
+        assertEquals(5, history.pop(1L, Direction.UNDO).orElseThrow().get(0).positionX());
+        assertEquals(3, history.pop(1L, Direction.UNDO).orElseThrow().get(0).positionX());
+        assertEquals(2, history.pop(1L, Direction.UNDO).orElseThrow().get(0).positionX());
+        assertTrue(history.pop(1L, Direction.UNDO).isEmpty());
+    }
+
+    @Test
+    void byteBudgetDropsOldestStepsAndIdleHistoriesAreEvicted() {
+        UndoHistory bounded = new UndoHistory(null, "memory", 100, 2 * (2 + 33), Duration.ofHours(1));
+        for (int i = 0; i < 10; i++) {
+            bounded.record(1L, List.of(memento(i)));
+        }
+        assertEquals(2 * (2 + 33), bounded.retainedBytes(1L));
+        for (int i = 0; i < 5; i++) {
+            bounded.pop(1L, Direction.UNDO);
+            bounded.push(1L, Direction.REDO, List.of(memento(i)));
+        }
+        assertEquals(2 * (2 + 33), bounded.retainedBytes(1L));
+        assertEquals(4, bounded.pop(1L, Direction.REDO).orElseThrow().get(0).positionX());
+
+        UndoHistory idle = new UndoHistory(null, "memory", 100, Long.MAX_VALUE, Duration.ZERO);
+        idle.record(1L, List.of(memento(1)));
+        idle.record(2L, List.of(memento(2)));
+
+        assertTrue(idle.pop(1L, Direction.UNDO).isEmpty());
+        assertEquals(0, idle.retainedBytes(1L));
+    }
+
+    private static ImageLayerMemento memento(int positionX) {
+        return new ImageLayerMemento(1L, positionX, 0, 100, 100, 0.0, null, null, null, null);
+    }
+}